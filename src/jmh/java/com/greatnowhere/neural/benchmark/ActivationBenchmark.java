@@ -0,0 +1,64 @@
+package com.greatnowhere.neural.benchmark;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.greatnowhere.neural.Activation;
+import com.greatnowhere.neural.Layer;
+
+/**
+ * Activation functions of each activation mode, scores are operations per second, each computing
+ * tanh and sigmoid of ARGUMENTS arguments
+ * @author pzeltins
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ActivationBenchmark {
+
+	public static final int ARGUMENTS = 1024;
+
+	@Param({"exact", "table", "rational"})
+	String mode;
+
+	int activationMode;
+	double[] x;
+
+	@Setup
+	public void setup() {
+		activationMode = ( "table".equals(mode) ? Layer.ACTIVATION_MODE_TABLE : "rational".equals(mode) ? 
+				Layer.ACTIVATION_MODE_RATIONAL : Layer.ACTIVATION_MODE_EXACT );
+		Random r = new Random(Topology.SEED);
+		x = new double[ARGUMENTS];
+		for (int i=0; i<x.length; i++) {
+			// mostly within range of the table, some beyond it
+			x[i] = 8D * r.nextGaussian();
+		}
+	}
+
+	@Benchmark
+	public double activation() {
+		double sum = 0D;
+		for (double v : x ) {
+			sum += Activation.tanh(v, activationMode) + Activation.sigmoid(v, activationMode);
+		}
+		return sum;
+	}
+
+}
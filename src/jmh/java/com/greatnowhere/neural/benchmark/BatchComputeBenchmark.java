@@ -0,0 +1,55 @@
+package com.greatnowhere.neural.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.greatnowhere.neural.Network;
+
+/**
+ * Forward pass of a batch of samples, scores are operations per second, each computing batch samples
+ * @author pzeltins
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BatchComputeBenchmark {
+
+	@Param({"400-20-1", "7500-600-1"})
+	String topology;
+
+	@Param({"1", "16", "256"})
+	int batch;
+
+	Network n;
+	double[][] inputs;
+	double[][] outputs;
+
+	@Setup
+	public void setup() {
+		n = Topology.network(topology);
+		inputs = Topology.samples(topology, batch).inputs;
+		outputs = new double[batch][1];
+	}
+
+	@Benchmark
+	public double[][] computeBatch() {
+		n.computeBatch(inputs, outputs);
+		return outputs;
+	}
+
+}
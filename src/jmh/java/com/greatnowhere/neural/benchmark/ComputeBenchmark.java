@@ -0,0 +1,56 @@
+package com.greatnowhere.neural.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.greatnowhere.neural.Network;
+
+/**
+ * Forward pass of a single sample
+ * @author pzeltins
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ComputeBenchmark {
+
+	@Param({"2-2-1", "400-20-1", "7500-600-1"})
+	String topology;
+
+	@Param({"double", "float"})
+	String precision;
+
+	Network n;
+	Topology.Samples samples;
+	int next;
+
+	@Setup
+	public void setup() {
+		n = Topology.network(topology, precision);
+		samples = Topology.samples(topology, 64);
+	}
+
+	@Benchmark
+	public double compute() throws InterruptedException {
+		next = ( next + 1 ) % samples.size();
+		n.setInputValues(samples.inputs[next]);
+		n.compute();
+		return n.getOutput();
+	}
+
+}
@@ -0,0 +1,86 @@
+package com.greatnowhere.neural.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.greatnowhere.neural.NetworkTrainer;
+import com.greatnowhere.neural.TrainingStore;
+
+/**
+ * Training epoch of a trainer by number of training threads, on samples added to the trainer
+ * or read from a mapped training store
+ * @author pzeltins
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EpochBenchmark {
+
+	public static final String TOPOLOGY = "400-20-1";
+	public static final int SAMPLES = 2000;
+
+	@Param({"1", "2", "4"})
+	int threads;
+
+	@Param({"stochastic", "batch"})
+	String method;
+
+	@Param({"list", "store"})
+	String source;
+
+	NetworkTrainer t;
+	File store;
+
+	@Setup
+	public void setup() throws IOException {
+		Topology.Samples samples = Topology.samples(TOPOLOGY, SAMPLES);
+		t = new NetworkTrainer();
+		t.init(Topology.inputs(TOPOLOGY), 1, 20, TrainingBenchmark.LEARNING_RATE, TrainingBenchmark.MOMENTUM);
+		t.n.setTrainingMethod(Topology.trainingMethod(method));
+		t.setTrainingThreads(threads);
+		if ( "store".equals(source) ) {
+			store = File.createTempFile("samples", ".bin");
+			try ( TrainingStore.Writer w = TrainingStore.create(store.toPath(), Topology.inputs(TOPOLOGY)) ) {
+				for (int s=0; s<samples.size(); s++) {
+					w.add(samples.inputs[s], samples.targets[s], null);
+				}
+			}
+			t.setTrainingStore(TrainingStore.open(store.toPath()));
+		} else {
+			for (int s=0; s<samples.size(); s++) {
+				t.addTrainingSet(samples.inputs[s], samples.targets[s], null);
+			}
+		}
+	}
+
+	@TearDown
+	public void tearDown() {
+		if ( store != null )
+			store.delete();
+	}
+
+	@Benchmark
+	public double epoch() throws InterruptedException, IOException {
+		t.train(null);
+		return t.n.successRate;
+	}
+
+}
@@ -0,0 +1,83 @@
+package com.greatnowhere.neural.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.greatnowhere.neural.Network;
+
+/**
+ * Serialization, binary format and cloning
+ * @author pzeltins
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PersistenceBenchmark {
+
+	@Param({"2-2-1", "400-20-1", "7500-600-1"})
+	String topology;
+
+	Network n;
+	String serialized;
+	File binary;
+
+	@Setup
+	public void setup() throws IOException {
+		n = Topology.network(topology);
+		serialized = n.serialize();
+		binary = File.createTempFile("network", ".bin");
+		n.persistToFile(binary.getPath());
+	}
+
+	@TearDown
+	public void tearDown() {
+		binary.delete();
+	}
+
+	@Benchmark
+	public String serialize() {
+		return n.serialize();
+	}
+
+	@Benchmark
+	public Network fromString() {
+		return Network.fromString(serialized);
+	}
+
+	@Benchmark
+	public void persistToFile() throws IOException {
+		n.persistToFile(binary.getPath());
+	}
+
+	@Benchmark
+	public Network fromPath() throws IOException {
+		return Network.fromPath(binary.getPath());
+	}
+
+	/**
+	 * Network(Network) copies dimensions and connections, weights being randomized
+	 */
+	@Benchmark
+	public Network copy() {
+		return new Network(n);
+	}
+
+}
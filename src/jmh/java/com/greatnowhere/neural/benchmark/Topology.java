@@ -0,0 +1,102 @@
+package com.greatnowhere.neural.benchmark;
+
+import java.util.Random;
+
+import com.greatnowhere.neural.AdamOptimizer;
+import com.greatnowhere.neural.Layer;
+import com.greatnowhere.neural.Network;
+import com.greatnowhere.neural.Neuron;
+import com.greatnowhere.neural.Optimizer;
+import com.greatnowhere.neural.TrainingData;
+
+/**
+ * Networks and random samples shared by benchmarks. Topologies are written as inputs-hidden-outputs
+ * @author pzeltins
+ *
+ */
+final class Topology {
+
+	static final long SEED = 1L;
+
+	private Topology() {
+	}
+
+	/**
+	 * @param topology such as "400-20-1"
+	 * @return network with random weights
+	 */
+	static Network network(String topology) {
+		return network(topology, "double");
+	}
+
+	/**
+	 * @param precision "double" or "float"
+	 */
+	static Network network(String topology, String precision) {
+		String[] dims = topology.split("-");
+		Network n = new Network();
+		n.init(Integer.parseInt(dims[0]), Integer.parseInt(dims[2]), Integer.parseInt(dims[1]), 
+				( "float".equals(precision) ? Layer.PRECISION_FLOAT : Layer.PRECISION_DOUBLE ));
+		return n;
+	}
+
+	static int trainingMethod(String method) {
+		return ( "batch".equals(method) ? Neuron.TRAINING_MODE_BATCH : Neuron.TRAINING_MODE_STOCHASTIC );
+	}
+
+	static int trainingAlgorithm(String algorithm) {
+		return ( "rprop".equals(algorithm) ? Neuron.TRAINING_ALG_RPROP : Neuron.TRAINING_ALG_BACKPROP );
+	}
+
+	/**
+	 * @return optimizer replacing training algorithm, null for "backprop" and "rprop"
+	 */
+	static Optimizer optimizer(String algorithm) {
+		return ( "adam".equals(algorithm) ? new AdamOptimizer() : null );
+	}
+
+	static int inputs(String topology) {
+		return Integer.parseInt(topology.split("-")[0]);
+	}
+
+	/**
+	 * @return samples of 0...1 inputs, each sample's target being 1 if its first input is above 0.5
+	 */
+	static Samples samples(String topology, int count) {
+		Random r = new Random(SEED);
+		Samples s = new Samples();
+		s.inputs = new double[count][inputs(topology)];
+		s.targets = new double[count];
+		for (int i=0; i<count; i++) {
+			for (int k=0; k<s.inputs[i].length; k++) {
+				s.inputs[i][k] = r.nextDouble();
+			}
+			s.targets[i] = ( s.inputs[i][0] > 0.5D ? 1D : 0D );
+		}
+		return s;
+	}
+
+	static class Samples implements TrainingData {
+
+		double[][] inputs;
+		double[] targets;
+
+		@Override
+		public int size() {
+			return inputs.length;
+		}
+
+		@Override
+		public double load(int index, Network n) {
+			n.setInputValues(inputs[index]);
+			return targets[index];
+		}
+
+		@Override
+		public double target(int index) {
+			return targets[index];
+		}
+
+	}
+
+}
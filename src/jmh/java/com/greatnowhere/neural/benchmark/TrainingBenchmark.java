@@ -0,0 +1,92 @@
+package com.greatnowhere.neural.benchmark;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.greatnowhere.neural.Network;
+import com.greatnowhere.neural.Utils;
+
+/**
+ * Backward pass, weight commit and whole training epoch for each training method and algorithm
+ * @author pzeltins
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TrainingBenchmark {
+
+	public static final double LEARNING_RATE = 0.01D;
+	public static final double MOMENTUM = 0.2D;
+	public static final double ERROR_MARGIN = 0.1D;
+	/**
+	 * samples per epoch, XOR topology trains on 4
+	 */
+	public static final int EPOCH_SAMPLES = 100;
+
+	@Param({"2-2-1", "400-20-1", "7500-600-1"})
+	String topology;
+
+	@Param({"stochastic", "batch"})
+	String method;
+
+	@Param({"backprop", "rprop", "adam"})
+	String algorithm;
+
+	Network n;
+	Topology.Samples samples;
+	int next;
+
+	@Setup
+	public void setup() throws InterruptedException {
+		n = Topology.network(topology);
+		n.setTrainingMethod(Topology.trainingMethod(method));
+		n.setTrainingAlgorithm(Topology.trainingAlgorithm(algorithm));
+		n.setOptimizer(Topology.optimizer(algorithm));
+		samples = Topology.samples(topology, ( Topology.inputs(topology) == 2 ? 4 : EPOCH_SAMPLES ));
+		// training state is allocated on first use
+		learn();
+		n.commitChanges(LEARNING_RATE, MOMENTUM);
+	}
+
+	/**
+	 * Forward pass followed by backward pass of a single sample
+	 */
+	@Benchmark
+	public double learn() throws InterruptedException {
+		next = ( next + 1 ) % samples.size();
+		n.setInputValues(samples.inputs[next]);
+		n.compute();
+		n.learn(0, samples.targets[next], LEARNING_RATE, MOMENTUM);
+		return n.getOutput();
+	}
+
+	/**
+	 * Applies weight changes accumulated in batch mode, does nothing in stochastic mode
+	 */
+	@Benchmark
+	public void commitChanges() {
+		n.commitChanges(LEARNING_RATE, MOMENTUM);
+	}
+
+	@Benchmark
+	public double epoch() throws InterruptedException, IOException {
+		return Utils.train(n, samples, LEARNING_RATE, MOMENTUM, ERROR_MARGIN, null);
+	}
+
+}
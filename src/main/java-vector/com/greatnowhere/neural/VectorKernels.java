@@ -0,0 +1,189 @@
+package com.greatnowhere.neural;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * SIMD kernels using the widest vectors the CPU supports. Float weights are loaded into half-width
+ * vectors and widened to double lanes, so float layers move half the memory of double layers.
+ * Weight updates compute the same operations in the same order as scalar kernels, so training results
+ * do not depend on the kernels used. Dot products use fused multiply-add and differ in last bits
+ * @author pzeltins
+ *
+ */
+class VectorKernels extends Kernels {
+
+	static final VectorSpecies<Double> D = DoubleVector.SPECIES_PREFERRED;
+	/**
+	 * float species with as many lanes as D
+	 */
+	static final VectorSpecies<Float> F = VectorSpecies.of(float.class, VectorShape.forBitSize(D.vectorBitSize() / 2));
+
+	VectorKernels() {
+		if ( D.length() < 2 )
+			throw new UnsupportedOperationException("no SIMD support");
+	}
+
+	@Override
+	String name() {
+		return "vector " + D.vectorBitSize() + " bit";
+	}
+
+	@Override
+	double dot(double[] w, int w0, double[] x, int x0, int n) {
+		DoubleVector acc0 = DoubleVector.zero(D), acc1 = DoubleVector.zero(D);
+		int step = D.length();
+		int i = 0;
+		for (int bound = n - 2 * step; i <= bound; i += 2 * step) {
+			acc0 = DoubleVector.fromArray(D, w, w0 + i).fma(DoubleVector.fromArray(D, x, x0 + i), acc0);
+			acc1 = DoubleVector.fromArray(D, w, w0 + i + step).fma(DoubleVector.fromArray(D, x, x0 + i + step), acc1);
+		}
+		for (int bound = D.loopBound(n); i < bound; i += step) {
+			acc0 = DoubleVector.fromArray(D, w, w0 + i).fma(DoubleVector.fromArray(D, x, x0 + i), acc0);
+		}
+		double t = acc0.add(acc1).reduceLanes(VectorOperators.ADD);
+		for (; i<n; i++) {
+			t += w[w0 + i] * x[x0 + i];
+		}
+		return t;
+	}
+
+	@Override
+	double dot(float[] w, int w0, double[] x, int x0, int n) {
+		DoubleVector acc0 = DoubleVector.zero(D), acc1 = DoubleVector.zero(D);
+		int step = D.length();
+		int i = 0;
+		for (int bound = n - 2 * step; i <= bound; i += 2 * step) {
+			acc0 = widen(w, w0 + i).fma(DoubleVector.fromArray(D, x, x0 + i), acc0);
+			acc1 = widen(w, w0 + i + step).fma(DoubleVector.fromArray(D, x, x0 + i + step), acc1);
+		}
+		for (int bound = D.loopBound(n); i < bound; i += step) {
+			acc0 = widen(w, w0 + i).fma(DoubleVector.fromArray(D, x, x0 + i), acc0);
+		}
+		double t = acc0.add(acc1).reduceLanes(VectorOperators.ADD);
+		for (; i<n; i++) {
+			t += w[w0 + i] * x[x0 + i];
+		}
+		return t;
+	}
+
+	private static DoubleVector widen(float[] w, int offset) {
+		return (DoubleVector) FloatVector.fromArray(F, w, offset).convertShape(VectorOperators.F2D, D, 0);
+	}
+
+	@Override
+	void dot4(double[] w, int w0, int stride, double[] x, int x0, int n, double[] sums, int s) {
+		int w1 = w0 + stride, w2 = w1 + stride, w3 = w2 + stride;
+		DoubleVector acc0 = DoubleVector.zero(D), acc1 = DoubleVector.zero(D), acc2 = DoubleVector.zero(D), acc3 = DoubleVector.zero(D);
+		int i = 0;
+		for (int bound = D.loopBound(n); i < bound; i += D.length()) {
+			DoubleVector v = DoubleVector.fromArray(D, x, x0 + i);
+			acc0 = DoubleVector.fromArray(D, w, w0 + i).fma(v, acc0);
+			acc1 = DoubleVector.fromArray(D, w, w1 + i).fma(v, acc1);
+			acc2 = DoubleVector.fromArray(D, w, w2 + i).fma(v, acc2);
+			acc3 = DoubleVector.fromArray(D, w, w3 + i).fma(v, acc3);
+		}
+		double t0 = acc0.reduceLanes(VectorOperators.ADD), t1 = acc1.reduceLanes(VectorOperators.ADD);
+		double t2 = acc2.reduceLanes(VectorOperators.ADD), t3 = acc3.reduceLanes(VectorOperators.ADD);
+		for (; i<n; i++) {
+			double v = x[x0 + i];
+			t0 += w[w0 + i] * v;
+			t1 += w[w1 + i] * v;
+			t2 += w[w2 + i] * v;
+			t3 += w[w3 + i] * v;
+		}
+		sums[s] += t0;
+		sums[s + 1] += t1;
+		sums[s + 2] += t2;
+		sums[s + 3] += t3;
+	}
+
+	@Override
+	void dot4(float[] w, int w0, int stride, double[] x, int x0, int n, double[] sums, int s) {
+		int w1 = w0 + stride, w2 = w1 + stride, w3 = w2 + stride;
+		DoubleVector acc0 = DoubleVector.zero(D), acc1 = DoubleVector.zero(D), acc2 = DoubleVector.zero(D), acc3 = DoubleVector.zero(D);
+		int i = 0;
+		for (int bound = D.loopBound(n); i < bound; i += D.length()) {
+			DoubleVector v = DoubleVector.fromArray(D, x, x0 + i);
+			acc0 = widen(w, w0 + i).fma(v, acc0);
+			acc1 = widen(w, w1 + i).fma(v, acc1);
+			acc2 = widen(w, w2 + i).fma(v, acc2);
+			acc3 = widen(w, w3 + i).fma(v, acc3);
+		}
+		double t0 = acc0.reduceLanes(VectorOperators.ADD), t1 = acc1.reduceLanes(VectorOperators.ADD);
+		double t2 = acc2.reduceLanes(VectorOperators.ADD), t3 = acc3.reduceLanes(VectorOperators.ADD);
+		for (; i<n; i++) {
+			double v = x[x0 + i];
+			t0 += w[w0 + i] * v;
+			t1 += w[w1 + i] * v;
+			t2 += w[w2 + i] * v;
+			t3 += w[w3 + i] * v;
+		}
+		sums[s] += t0;
+		sums[s + 1] += t1;
+		sums[s + 2] += t2;
+		sums[s + 3] += t3;
+	}
+
+	@Override
+	void axpy(double a, double[] x, int x0, double[] y, int y0, int n) {
+		DoubleVector av = DoubleVector.broadcast(D, a);
+		int i = 0;
+		for (int bound = D.loopBound(n); i < bound; i += D.length()) {
+			DoubleVector.fromArray(D, x, x0 + i).mul(av).add(DoubleVector.fromArray(D, y, y0 + i)).intoArray(y, y0 + i);
+		}
+		for (; i<n; i++) {
+			y[y0 + i] += a * x[x0 + i];
+		}
+	}
+
+	@Override
+	void axpy(double a, float[] x, int x0, double[] y, int y0, int n) {
+		DoubleVector av = DoubleVector.broadcast(D, a);
+		int i = 0;
+		for (int bound = D.loopBound(n); i < bound; i += D.length()) {
+			widen(x, x0 + i).mul(av).add(DoubleVector.fromArray(D, y, y0 + i)).intoArray(y, y0 + i);
+		}
+		for (; i<n; i++) {
+			y[y0 + i] += a * x[x0 + i];
+		}
+	}
+
+	@Override
+	void adjust(double k, double[] x, int x0, double[] deltas, double[] weights, int w0, int n, double momentum) {
+		DoubleVector kv = DoubleVector.broadcast(D, k), mv = DoubleVector.broadcast(D, momentum);
+		int i = 0;
+		for (int bound = D.loopBound(n); i < bound; i += D.length()) {
+			DoubleVector delta = DoubleVector.fromArray(D, x, x0 + i).mul(kv).add(DoubleVector.fromArray(D, deltas, w0 + i).mul(mv));
+			delta.intoArray(deltas, w0 + i);
+			DoubleVector.fromArray(D, weights, w0 + i).add(delta).intoArray(weights, w0 + i);
+		}
+		for (; i<n; i++) {
+			double delta = k * x[x0 + i] + deltas[w0 + i] * momentum;
+			deltas[w0 + i] = delta;
+			weights[w0 + i] += delta;
+		}
+	}
+
+	@Override
+	void adjust(double k, double[] x, int x0, float[] deltas, float[] weights, int w0, int n, double momentum) {
+		float kf = (float) k, m = (float) momentum;
+		FloatVector kv = FloatVector.broadcast(F, kf), mv = FloatVector.broadcast(F, m);
+		int i = 0;
+		for (int bound = D.loopBound(n); i < bound; i += D.length()) {
+			FloatVector xv = (FloatVector) DoubleVector.fromArray(D, x, x0 + i).convertShape(VectorOperators.D2F, F, 0);
+			FloatVector delta = xv.mul(kv).add(FloatVector.fromArray(F, deltas, w0 + i).mul(mv));
+			delta.intoArray(deltas, w0 + i);
+			FloatVector.fromArray(F, weights, w0 + i).add(delta).intoArray(weights, w0 + i);
+		}
+		for (; i<n; i++) {
+			float delta = kf * (float) x[x0 + i] + deltas[w0 + i] * m;
+			deltas[w0 + i] = delta;
+			weights[w0 + i] += delta;
+		}
+	}
+
+}
@@ -0,0 +1,105 @@
+package com.greatnowhere.neural;
+
+/**
+ * Activation function implementations selected by Layer.ACTIVATION_MODE_*. Sigmoid is computed
+ * from tanh as 0.5 + 0.5 * tanh(x / 2), so its error is half that of tanh.
+ * Derivatives are computed from neuron output with the exact formulas (Utils.d_tanh, Utils.d_sigmoid).
+ * With approximated output their absolute error is at most twice the tanh error for tanh, and at most
+ * the sigmoid error for sigmoid
+ * @author pzeltins
+ *
+ */
+public final class Activation {
+
+	/**
+	 * Max absolute error of tanh lookup table, checked by ActivationTest
+	 */
+	public static final double TABLE_MAX_ERROR = 3E-5D;
+	/**
+	 * Max absolute error of rational tanh approximation, checked by ActivationTest
+	 */
+	public static final double RATIONAL_MAX_ERROR = 1E-4D;
+
+	/**
+	 * tanh is tabulated on -TABLE_RANGE...TABLE_RANGE, being within 3E-7 of -1 or 1 outside it
+	 */
+	static final double TABLE_RANGE = 8D;
+	/**
+	 * table points per unit of input. Linear interpolation error is below step^2 / 8 * max|tanh''|
+	 */
+	static final int TABLE_SCALE = 64;
+	static final double[] TABLE = new double[(int) ( 2 * TABLE_RANGE * TABLE_SCALE ) + 1];
+	/**
+	 * Input above which rational approximation exceeds 1
+	 */
+	static final double RATIONAL_LIMIT = 4.97178D;
+
+	static {
+		for (int i=0; i<TABLE.length; i++) {
+			TABLE[i] = Math.tanh((double) i / TABLE_SCALE - TABLE_RANGE);
+		}
+	}
+
+	private Activation() {
+	}
+
+	/**
+	 * @param x
+	 * @param mode Layer.ACTIVATION_MODE_*
+	 * @return -1...1
+	 */
+	public static double tanh(double x, int mode) {
+		switch ( mode ) {
+		case Layer.ACTIVATION_MODE_TABLE:
+			return tanhTable(x);
+		case Layer.ACTIVATION_MODE_RATIONAL:
+			return tanhRational(x);
+		default:
+			return Utils.tanh(x);
+		}
+	}
+
+	/**
+	 * @param x
+	 * @param mode Layer.ACTIVATION_MODE_*
+	 * @return 0...1
+	 */
+	public static double sigmoid(double x, int mode) {
+		switch ( mode ) {
+		case Layer.ACTIVATION_MODE_TABLE:
+			return 0.5D + 0.5D * tanhTable(0.5D * x);
+		case Layer.ACTIVATION_MODE_RATIONAL:
+			return 0.5D + 0.5D * tanhRational(0.5D * x);
+		default:
+			return Utils.sigmoid(x);
+		}
+	}
+
+	/**
+	 * Piecewise-linear interpolation of tabulated tanh, max error TABLE_MAX_ERROR
+	 * @param x
+	 * @return -1...1
+	 */
+	public static double tanhTable(double x) {
+		if ( x >= TABLE_RANGE ) return 1D;
+		if ( x <= -TABLE_RANGE ) return -1D;
+		double p = ( x + TABLE_RANGE ) * TABLE_SCALE;
+		int i = (int) p;
+		double v = TABLE[i];
+		return v + ( p - i ) * ( TABLE[i + 1] - v );
+	}
+
+	/**
+	 * Pade approximant of tanh of order [7/6], max error RATIONAL_MAX_ERROR
+	 * @param x
+	 * @return -1...1
+	 */
+	public static double tanhRational(double x) {
+		if ( x >= RATIONAL_LIMIT ) return 1D;
+		if ( x <= -RATIONAL_LIMIT ) return -1D;
+		double x2 = x * x;
+		return x * ( 135135D + x2 * ( 17325D + x2 * ( 378D + x2 ) ) ) /
+				( 135135D + x2 * ( 62370D + x2 * ( 3150D + 28D * x2 ) ) );
+	}
+
+}
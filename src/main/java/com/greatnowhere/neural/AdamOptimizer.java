@@ -0,0 +1,111 @@
+package com.greatnowhere.neural;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Adam, moving averages of gradient and of its square, corrected for their zero start,
+ * giving each weight a step of about learningRate in the direction of its recent gradients.
+ * Learning rate is a step size, typically 0.001...0.01
+ * @author pzeltins
+ *
+ */
+public class AdamOptimizer implements Optimizer {
+
+	double beta1, beta2, epsilon;
+	/**
+	 * number of steps taken, shared with views so that every sample of parallel training takes its own step number
+	 */
+	AtomicLong steps = new AtomicLong();
+	/**
+	 * bias correction of current step, folded into learning rate and epsilon
+	 */
+	double rateCorrection = 1D, epsilonCorrection = 1D;
+	double[] means, meanSquares;
+	float[] floatMeans, floatMeanSquares;
+
+	/**
+	 * beta1 0.9, beta2 0.999, epsilon 1E-8
+	 */
+	public AdamOptimizer() {
+		this(0.9D, 0.999D, 1E-8D);
+	}
+
+	/**
+	 * @param beta1 decay of gradient average
+	 * @param beta2 decay of squared gradient average
+	 * @param epsilon
+	 */
+	public AdamOptimizer(double beta1, double beta2, double epsilon) {
+		this.beta1 = beta1;
+		this.beta2 = beta2;
+		this.epsilon = epsilon;
+	}
+
+	@Override
+	public Optimizer create(int weights, int precision) {
+		AdamOptimizer o = new AdamOptimizer(beta1, beta2, epsilon);
+		if ( precision == Layer.PRECISION_FLOAT ) {
+			o.floatMeans = new float[weights];
+			o.floatMeanSquares = new float[weights];
+		} else {
+			o.means = new double[weights];
+			o.meanSquares = new double[weights];
+		}
+		return o;
+	}
+
+	@Override
+	public Optimizer view() {
+		AdamOptimizer o = new AdamOptimizer(beta1, beta2, epsilon);
+		o.steps = steps;
+		o.means = means;
+		o.meanSquares = meanSquares;
+		o.floatMeans = floatMeans;
+		o.floatMeanSquares = floatMeanSquares;
+		return o;
+	}
+
+	@Override
+	public void next() {
+		long t = steps.incrementAndGet();
+		double c2 = Math.sqrt(1D - Math.pow(beta2, t));
+		// m / (1 - b1^t) / ( sqrt(v / (1 - b2^t)) + eps ) = m * c2 / (1 - b1^t) / ( sqrt(v) + eps * c2 )
+		rateCorrection = c2 / ( 1D - Math.pow(beta1, t) );
+		epsilonCorrection = c2;
+	}
+
+	@Override
+	public void step(double[] weights, int from, double[] gradients, int g0, int n, double learningRate) {
+		double[] m = means, v = meanSquares;
+		double b1 = beta1, b2 = beta2;
+		double a = learningRate * rateCorrection, eps = epsilon * epsilonCorrection;
+		for (int i=0; i<n; i++) {
+			int w = from + i;
+			double g = gradients[g0 + i];
+			double mw = b1 * m[w] + ( 1D - b1 ) * g;
+			double vw = b2 * v[w] + ( 1D - b2 ) * g * g;
+			m[w] = mw;
+			v[w] = vw;
+			weights[w] += a * mw / ( Math.sqrt(vw) + eps );
+			gradients[g0 + i] = 0D;
+		}
+	}
+
+	@Override
+	public void step(float[] weights, int from, float[] gradients, int g0, int n, double learningRate) {
+		float[] m = floatMeans, v = floatMeanSquares;
+		double b1 = beta1, b2 = beta2;
+		double a = learningRate * rateCorrection, eps = epsilon * epsilonCorrection;
+		for (int i=0; i<n; i++) {
+			int w = from + i;
+			double g = gradients[g0 + i];
+			double mw = b1 * m[w] + ( 1D - b1 ) * g;
+			double vw = b2 * v[w] + ( 1D - b2 ) * g * g;
+			m[w] = FloatLayer.narrow(mw);
+			v[w] = FloatLayer.narrow(vw);
+			weights[w] += a * mw / ( Math.sqrt(vw) + eps );
+			gradients[g0 + i] = 0F;
+		}
+	}
+
+}
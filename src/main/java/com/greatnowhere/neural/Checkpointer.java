@@ -0,0 +1,145 @@
+package com.greatnowhere.neural;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Persists a network in binary format while training goes on. Weights are copied into a buffer
+ * reused between checkpoints, which a background thread writes under a temporary name and renames
+ * over the previous checkpoint, so the file at path is always complete.
+ * Only one checkpoint of a network is in flight at a time. If previous one is still being written
+ * when the next is due, the next one is postponed to the following epoch rather than queued
+ * @author pzeltins
+ *
+ */
+public class Checkpointer {
+
+	/**
+	 * single thread writing checkpoints of all networks, so checkpoints of the same file never overlap
+	 */
+	static final ExecutorService WRITER = Executors.newSingleThreadExecutor(r -> {
+		Thread t = new Thread(r, "checkpoint writer");
+		t.setDaemon(true);
+		return t;
+	});
+
+	Path path;
+	int intervalEpochs = 1;
+	long intervalMillis = 0L;
+	/**
+	 * epochs trained and time since the last snapshot
+	 */
+	int epochs;
+	long lastSnapshot = System.currentTimeMillis();
+	ByteBuffer buffer;
+	Future<?> pending;
+
+	/**
+	 * @param path file network is written to
+	 */
+	public Checkpointer(Path path) {
+		this.path = path;
+	}
+
+	/**
+	 * Sets how often checkpoints are taken. Checkpoint is due once either interval has passed,
+	 * intervals of 0 are not used. Default is every epoch
+	 * @param epochs
+	 * @param millis
+	 */
+	public void setInterval(int epochs, long millis) {
+		intervalEpochs = epochs;
+		intervalMillis = millis;
+	}
+
+	public Path getPath() {
+		return path;
+	}
+
+	/**
+	 * Called by training thread after each epoch is committed. Takes snapshot of n and starts writing it
+	 * if checkpoint is due and previous one is written
+	 * @param n
+	 * @throws IOException if previous checkpoint could not be written
+	 */
+	public void epochFinished(Network n) throws IOException {
+		epochs++;
+		boolean due = ( intervalEpochs > 0 && epochs >= intervalEpochs ) ||
+				( intervalMillis > 0 && System.currentTimeMillis() - lastSnapshot >= intervalMillis );
+		if ( !due )
+			return;
+		if ( pending != null ) {
+			if ( !pending.isDone() )
+				return;
+			await();
+		}
+		snapshot(n);
+		pending = WRITER.submit(() -> {
+			write();
+			return null;
+		});
+	}
+
+	/**
+	 * Waits for checkpoint being written, then writes n if it has trained since the last snapshot
+	 * @param n
+	 * @throws IOException
+	 */
+	public void flush(Network n) throws IOException {
+		await();
+		if ( epochs > 0 ) {
+			snapshot(n);
+			write();
+		}
+	}
+
+	/**
+	 * Waits until checkpoint being written, if any, is written
+	 * @throws IOException if it could not be written
+	 */
+	public void await() throws IOException {
+		if ( pending == null )
+			return;
+		try {
+			pending.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("interrupted while writing checkpoint", e);
+		} catch (ExecutionException e) {
+			throw ( e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause()) );
+		} finally {
+			pending = null;
+		}
+	}
+
+	private void snapshot(Network n) {
+		long length = NetworkFormat.length(n);
+		if ( length > Integer.MAX_VALUE )
+			throw new IllegalStateException("network too large for checkpoint buffer " + length);
+		if ( buffer == null || buffer.capacity() < length )
+			buffer = ByteBuffer.allocateDirect((int) length).order(ByteOrder.LITTLE_ENDIAN);
+		buffer.clear();
+		NetworkFormat.put(n, buffer);
+		buffer.flip();
+		epochs = 0;
+		lastSnapshot = System.currentTimeMillis();
+	}
+
+	private void write() throws IOException {
+		Path temp = NetworkFormat.temporary(path);
+		try ( FileChannel ch = FileChannel.open(temp, StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING) ) {
+			NetworkFormat.writeFully(ch, buffer.duplicate());
+			ch.force(false);
+		}
+		NetworkFormat.replace(temp, path);
+	}
+
+}
@@ -0,0 +1,57 @@
+package com.greatnowhere.neural;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Writes a CSV row for each epoch, times in microseconds. Rows are flushed as they are written
+ * @author pzeltins
+ *
+ */
+public class CsvListener implements TrainingListener, Closeable {
+
+	static final String HEADER = "network,epoch,samples,duration_us,samples_per_s,forward_us,backward_us,commit_us," +
+			"min_error,max_error,total_error,success_rate,hidden_weight_norm,output_weight_norm,max_weight," +
+			"latency_p50_us,latency_p99_us,latency_max_us";
+
+	BufferedWriter out;
+
+	/**
+	 * Creates CSV file, replacing existing one
+	 * @param path
+	 * @throws IOException
+	 */
+	public CsvListener(Path path) throws IOException {
+		out = Files.newBufferedWriter(path, StandardCharsets.UTF_8);
+		out.write(HEADER);
+		out.newLine();
+		out.flush();
+	}
+
+	@Override
+	public synchronized void epochFinished(EpochStats s) {
+		try {
+			out.write(Integer.toHexString(System.identityHashCode(s.network)) + "," + s.epoch + "," + s.samples + "," + 
+					s.durationNanos / 1000L + "," + s.getSamplesPerSecond() + "," + s.forwardNanos / 1000L + "," + 
+					s.backwardNanos / 1000L + "," + s.commitNanos / 1000L + "," + s.minError + "," + s.maxError + "," + 
+					s.totalError + "," + s.successRate + "," + s.hiddenWeightNorm + "," + s.outputWeightNorm + "," + 
+					s.maxWeight + "," + s.sampleLatency.getPercentile(50D) / 1000L + "," + 
+					s.sampleLatency.getPercentile(99D) / 1000L + "," + s.sampleLatency.getMax() / 1000L);
+			out.newLine();
+			out.flush();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		out.close();
+	}
+
+}
@@ -0,0 +1,86 @@
+package com.greatnowhere.neural;
+
+/**
+ * Statistics of a training epoch passed to TrainingListener. Forward and backward times are summed 
+ * over training threads, so with several threads they may exceed epoch duration
+ * @author pzeltins
+ *
+ */
+public class EpochStats {
+
+	/**
+	 * network trained, herd specimens being separate networks
+	 */
+	public Network network;
+	/**
+	 * number of epochs this network has been trained, including this one
+	 */
+	public int epoch;
+	public int samples;
+	/**
+	 * wall time of the whole epoch, including commit and checkpoint snapshot
+	 */
+	public long durationNanos;
+	public long forwardNanos;
+	public long backwardNanos;
+	public long commitNanos;
+	public double minError, maxError, totalError;
+	public double successRate;
+	/**
+	 * Euclidean norms of layer weights, including bias weights
+	 */
+	public double hiddenWeightNorm, outputWeightNorm;
+	/**
+	 * largest absolute weight
+	 */
+	public double maxWeight;
+	/**
+	 * forward and backward pass time of each sample
+	 */
+	public LatencyHistogram sampleLatency;
+
+	/**
+	 * Collects statistics of an epoch just trained by n
+	 */
+	EpochStats(Network n, int samples, long durationNanos, long commitNanos) {
+		network = n;
+		epoch = n.epochs;
+		this.samples = samples;
+		this.durationNanos = durationNanos;
+		this.commitNanos = commitNanos;
+		forwardNanos = n.forwardNanos;
+		backwardNanos = n.backwardNanos;
+		minError = n.minError;
+		maxError = n.maxError;
+		totalError = n.totalError;
+		successRate = n.successRate;
+		sampleLatency = n.latencies;
+		hiddenWeightNorm = norm(n.hidden);
+		outputWeightNorm = norm(n.output);
+	}
+
+	private double norm(Layer l) {
+		double sum = 0D;
+		for (int w=0; w<l.size * l.stride; w++) {
+			double v = l.getWeight(w);
+			sum += v * v;
+			maxWeight = Math.max(maxWeight, Math.abs(v));
+		}
+		return Math.sqrt(sum);
+	}
+
+	public double getSamplesPerSecond() {
+		return ( durationNanos > 0 ? samples * 1E9D / durationNanos : 0D );
+	}
+
+	@Override
+	public String toString() {
+		return String.format("epoch %d: %d samples in %.1f ms, %.0f samples/s, forward %.1f ms, backward %.1f ms, commit %.1f ms, " +
+				"error min %.4g max %.4g total %.4g, success rate %.4f, weight norm hidden %.3g output %.3g max %.3g, " +
+				"sample latency p50 %d us p99 %d us max %d us",
+				epoch, samples, durationNanos / 1E6D, getSamplesPerSecond(), forwardNanos / 1E6D, backwardNanos / 1E6D, commitNanos / 1E6D,
+				minError, maxError, totalError, successRate, hiddenWeightNorm, outputWeightNorm, maxWeight,
+				sampleLatency.getPercentile(50D) / 1000L, sampleLatency.getPercentile(99D) / 1000L, sampleLatency.getMax() / 1000L);
+	}
+
+}
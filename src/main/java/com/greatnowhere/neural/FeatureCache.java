@@ -0,0 +1,192 @@
+package com.greatnowhere.neural;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Resized pixels of image files kept between runs, so that only new or changed images are decoded.
+ * Entries are keyed by absolute file path, and are valid while file size and modification time stay the same.
+ * Cache keeps raster bytes rather than network inputs, so channel layout and normalization can be
+ * changed without invalidating it. All values are little-endian:
+ * <pre>
+ * int    magic "NNFC", version, width, height, number of entries
+ * entries:
+ *   int    path length, UTF-8 path
+ *   long   file size, modification time in milliseconds
+ *   int    raster length, 0 if file is not an image
+ *   byte   resized pixels, 3 per pixel, blue first, row by row
+ * </pre>
+ * @author pzeltins
+ *
+ */
+public class FeatureCache {
+
+	static final int MAGIC = 0x43464E4E; // "NNFC" when read as little-endian bytes
+	static final int VERSION = 1;
+
+	Path file;
+	int width, height;
+	Map<String, Entry> entries = new ConcurrentHashMap<>();
+	volatile boolean modified;
+	AtomicInteger hits = new AtomicInteger(), misses = new AtomicInteger();
+
+	static class Entry {
+		long size;
+		long modifiedTime;
+		byte[] raster;
+
+		Entry(long size, long modifiedTime, byte[] raster) {
+			this.size = size;
+			this.modifiedTime = modifiedTime;
+			this.raster = raster;
+		}
+	}
+
+	private FeatureCache(Path file, int width, int height) {
+		this.file = file;
+		this.width = width;
+		this.height = height;
+	}
+
+	/**
+	 * Opens cache file, starting with an empty cache if file does not exist, is damaged,
+	 * or was written for other image dimensions
+	 * @param file
+	 * @param width
+	 * @param height
+	 * @return
+	 * @throws IOException
+	 */
+	public static FeatureCache open(Path file, int width, int height) throws IOException {
+		FeatureCache c = new FeatureCache(file, width, height);
+		if ( !Files.isRegularFile(file) )
+			return c;
+		try ( FileChannel ch = FileChannel.open(file, StandardOpenOption.READ) ) {
+			ByteBuffer b = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size()).order(ByteOrder.LITTLE_ENDIAN);
+			if ( b.remaining() < 20 || b.getInt() != MAGIC || b.getInt() != VERSION || b.getInt() != width || b.getInt() != height )
+				return c;
+			int count = b.getInt();
+			for (int i=0; i<count; i++) {
+				byte[] path = new byte[b.getInt()];
+				b.get(path);
+				long size = b.getLong();
+				long modifiedTime = b.getLong();
+				byte[] raster = new byte[b.getInt()];
+				b.get(raster);
+				c.entries.put(new String(path, StandardCharsets.UTF_8), new Entry(size, modifiedTime, raster));
+			}
+		} catch (RuntimeException e) {
+			// truncated or damaged file, everything is decoded again
+			c.entries.clear();
+		}
+		return c;
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	public int getHeight() {
+		return height;
+	}
+
+	/**
+	 * @return number of cached files
+	 */
+	public int size() {
+		return entries.size();
+	}
+
+	/**
+	 * @return number of lookups answered from cache since it was opened
+	 */
+	public int getHits() {
+		return hits.get();
+	}
+
+	/**
+	 * @return number of lookups of new or changed files since cache was opened
+	 */
+	public int getMisses() {
+		return misses.get();
+	}
+
+	static String key(Path file) {
+		return file.toAbsolutePath().normalize().toString();
+	}
+
+	/**
+	 * @param file
+	 * @param attrs current attributes of file
+	 * @return cached raster, empty if file is not an image, or null if file is not cached or has changed
+	 */
+	byte[] get(Path file, BasicFileAttributes attrs) {
+		Entry e = entries.get(key(file));
+		if ( e == null || e.size != attrs.size() || e.modifiedTime != attrs.lastModifiedTime().toMillis() ) {
+			misses.incrementAndGet();
+			return null;
+		}
+		hits.incrementAndGet();
+		return e.raster;
+	}
+
+	/**
+	 * @param file
+	 * @param attrs attributes of file when it was read
+	 * @param raster resized pixels, empty if file is not an image
+	 */
+	void put(Path file, BasicFileAttributes attrs, byte[] raster) {
+		entries.put(key(file), new Entry(attrs.size(), attrs.lastModifiedTime().toMillis(), raster));
+		modified = true;
+	}
+
+	/**
+	 * Drops entries of files that no longer exist or have changed, and writes cache file if anything
+	 * has changed since it was opened. File is written under a temporary name and then renamed
+	 * @throws IOException
+	 */
+	public synchronized void save() throws IOException {
+		for (Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator(); it.hasNext(); ) {
+			Map.Entry<String, Entry> e = it.next();
+			Path p = file.getFileSystem().getPath(e.getKey());
+			BasicFileAttributes attrs = ( Files.isRegularFile(p) ? Files.readAttributes(p, BasicFileAttributes.class) : null );
+			if ( attrs == null || attrs.size() != e.getValue().size || attrs.lastModifiedTime().toMillis() != e.getValue().modifiedTime ) {
+				it.remove();
+				modified = true;
+			}
+		}
+		if ( !modified )
+			return;
+		Path temp = NetworkFormat.temporary(file);
+		try ( FileChannel ch = FileChannel.open(temp, StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING) ) {
+			ByteBuffer b = ByteBuffer.allocate(20).order(ByteOrder.LITTLE_ENDIAN);
+			b.putInt(MAGIC).putInt(VERSION).putInt(width).putInt(height).putInt(entries.size());
+			b.flip();
+			NetworkFormat.writeFully(ch, b);
+			for (Map.Entry<String, Entry> e : entries.entrySet() ) {
+				byte[] path = e.getKey().getBytes(StandardCharsets.UTF_8);
+				Entry entry = e.getValue();
+				b = ByteBuffer.allocate(4 + path.length + 20 + entry.raster.length).order(ByteOrder.LITTLE_ENDIAN);
+				b.putInt(path.length).put(path).putLong(entry.size).putLong(entry.modifiedTime);
+				b.putInt(entry.raster.length).put(entry.raster);
+				b.flip();
+				NetworkFormat.writeFully(ch, b);
+			}
+			ch.force(false);
+		}
+		NetworkFormat.replace(temp, file);
+		modified = false;
+	}
+
+}
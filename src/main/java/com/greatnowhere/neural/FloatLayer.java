@@ -0,0 +1,279 @@
+package com.greatnowhere.neural;
+
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Layer keeping weights and per-weight training state as float, halving memory and memory traffic
+ * of large layers. Unit values stay double, products are summed as double so that wide layers
+ * do not lose accuracy
+ * @author pzeltins
+ *
+ */
+public class FloatLayer extends Layer {
+
+	/**
+	 * Neurons with smaller weight changes are not adjusted, their momentum is dropped. 
+	 * Such changes cannot alter float weights, and decaying momentum would turn them into 
+	 * subnormal floats which are very slow to compute with
+	 */
+	static final double MIN_CHANGE = 1E-30D;
+
+	float[] floatWeights;
+	float[] floatDeltaWeights;
+	float[] floatTotalDeltaWeights;
+	float[] floatRowGradients;
+
+	public FloatLayer(int size, int firstUnit, int srcFrom, int fanIn, int activation) {
+		super(size, firstUnit, srcFrom, fanIn, activation);
+	}
+
+	FloatLayer(int size, int firstUnit, int srcFrom, int fanIn, int activation, boolean randomize) {
+		super(size, firstUnit, srcFrom, fanIn, activation, randomize);
+	}
+
+	/**
+	 * Create new layer with the same dimensions, connections and parameters as source
+	 * Does not copy weights
+	 * @param source
+	 */
+	public FloatLayer(FloatLayer source) {
+		super(source);
+	}
+
+	FloatLayer() {
+	}
+
+	@Override
+	Layer copyStructure() {
+		return new FloatLayer(this);
+	}
+
+	@Override
+	public int getPrecision() {
+		return PRECISION_FLOAT;
+	}
+
+	@Override
+	double getWeight(int w) {
+		return floatWeights[w];
+	}
+
+	@Override
+	void setWeight(int w, double value) {
+		floatWeights[w] = (float) value;
+	}
+
+	@Override
+	void allocate() {
+		floatWeights = new float[size * stride];
+		batchGradients = new double[size];
+		depth = new int[size];
+	}
+
+	@Override
+	void prepareTraining() {
+		if ( floatDeltaWeights != null )
+			return;
+		int n = floatWeights.length;
+		floatDeltaWeights = new float[n];
+		floatTotalDeltaWeights = new float[n];
+	}
+
+	@Override
+	void randomize() {
+		ThreadLocalRandom r = ThreadLocalRandom.current();
+		for (int w=0; w<floatWeights.length; w++) {
+			floatWeights[w] = ( mask == null || mask[w] ? 2F * (r.nextFloat() - 0.5F) : 0F );
+		}
+	}
+
+	@Override
+	double dot(int w0, double[] x, int x0, int n) {
+		return Kernels.INSTANCE.dot(floatWeights, w0, x, x0, n);
+	}
+
+	@Override
+	void dot4(int w0, double[] x, int x0, int n, double[] sums, int s) {
+		Kernels.INSTANCE.dot4(floatWeights, w0, stride, x, x0, n, sums, s);
+	}
+
+	@Override
+	void axpy(double a, int w0, double[] y, int y0, int n) {
+		Kernels.INSTANCE.axpy(a, floatWeights, w0, y, y0, n);
+	}
+
+	@Override
+	void adjustWeights(int j, double gradient, double[] units, double learningRate, double momentum) {
+		prepareTraining();
+		batchGradients[j] += gradient;
+		if ( optimizer != null ) {
+			adjustGradients(j, gradient, units, learningRate);
+			return;
+		}
+		// no adjustments in batch gradient mode - we only need total gradient for batch
+		if ( trainingMode == Neuron.TRAINING_MODE_BATCH_GRADIENT )
+			return;
+
+		double k = learningRate * gradient;
+		int row = j * stride;
+		if ( trainingMode == Neuron.TRAINING_MODE_BATCH ) {
+			// batch backprop only sums weight deltas, momentum is applied once when committing
+			float[] totalDeltaWeights = floatTotalDeltaWeights;
+			for (int i=0; i<fanIn; i++) {
+				totalDeltaWeights[row + i] = narrow(totalDeltaWeights[row + i] + k * units[srcFrom + i]);
+			}
+			totalDeltaWeights[row + fanIn] = narrow(totalDeltaWeights[row + fanIn] + k);
+			return;
+		}
+		if ( mask == null ) {
+			// fully connected stochastic backprop is computed in float
+			if ( Math.abs(k) < MIN_CHANGE ) {
+				Arrays.fill(floatDeltaWeights, row, row + stride, 0F);
+				return;
+			}
+			Kernels.INSTANCE.adjust(k, units, srcFrom, floatDeltaWeights, floatWeights, row, fanIn, momentum);
+			adjustWeight(row + fanIn, 1D, k, momentum);
+			return;
+		}
+		for (int i=0; i<fanIn; i++) {
+			adjustWeight(row + i, units[srcFrom + i], k, momentum);
+		}
+		adjustWeight(row + fanIn, 1D, k, momentum);
+	}
+
+	@Override
+	void adjustGradients(int j, double gradient, double[] units, double learningRate) {
+		int row = j * stride;
+		float[] g;
+		int g0;
+		boolean perSample = stepsPerSample();
+		if ( !perSample ) {
+			g = floatTotalDeltaWeights;
+			g0 = row;
+		} else {
+			if ( floatRowGradients == null || floatRowGradients.length != stride )
+				floatRowGradients = new float[stride];
+			g = floatRowGradients;
+			g0 = 0;
+		}
+		for (int i=0; i<fanIn; i++) {
+			g[g0 + i] = ( mask == null || mask[row + i] ? narrow(g[g0 + i] + gradient * units[srcFrom + i]) : 0F );
+		}
+		g[g0 + fanIn] = narrow(g[g0 + fanIn] + gradient);
+		if ( perSample )
+			optimizer.step(floatWeights, row, g, 0, stride, learningRate);
+	}
+
+	private void adjustWeight(int w, double input, double k, double momentum) {
+		if ( mask != null && !mask[w] )
+			return;
+		double deltaW = k * input + floatDeltaWeights[w] * momentum;
+		floatDeltaWeights[w] = narrow(deltaW);
+		floatWeights[w] += deltaW;
+	}
+
+	/**
+	 * Narrows a weight change to float, flushing changes too small for a normal float to zero.
+	 * Changes of saturated neurons decay into subnormal floats otherwise, which are very slow to compute with
+	 */
+	static float narrow(double v) {
+		// branch free, as small and large changes are mixed unpredictably: exponents below 
+		// float's smallest normal exponent (-126) turn the mask into all ones, clearing the value
+		long bits = Double.doubleToRawLongBits(v);
+		long tiny = ( ( ( bits >>> 52 ) & 0x7FF ) - ( 1023 - 126 ) ) >> 63;
+		return (float) Double.longBitsToDouble(bits & ~tiny);
+	}
+
+	@Override
+	void commitWeights(double[] units, double learningRate, double momentum) {
+		prepareTraining();
+		if ( optimizer != null ) {
+			if ( !stepsPerSample() ) {
+				// masked gradients are never summed, see adjustGradients
+				optimizer.next();
+				optimizer.step(floatWeights, 0, floatTotalDeltaWeights, 0, floatWeights.length, learningRate);
+			}
+			Arrays.fill(batchGradients, 0D);
+			return;
+		}
+		for (int j=0; j<size; j++) {
+			if ( trainingMode != Neuron.TRAINING_MODE_STOCHASTIC ) {
+				double k = learningRate * batchGradients[j];
+				int row = j * stride;
+				for (int i=0; i<fanIn; i++) {
+					commitWeight(row + i, units[srcFrom + i], k, momentum);
+				}
+				commitWeight(row + fanIn, 1D, k, momentum);
+			}
+			batchGradients[j] = 0D;
+		}
+	}
+
+	private void commitWeight(int w, double input, double k, double momentum) {
+		if ( mask == null || mask[w] ) {
+			double deltaW = ( trainingMode == Neuron.TRAINING_MODE_BATCH ? floatTotalDeltaWeights[w] : k * input ) + floatDeltaWeights[w] * momentum;
+			floatDeltaWeights[w] = narrow(deltaW);
+			floatWeights[w] += deltaW;
+		}
+		floatTotalDeltaWeights[w] = 0F;
+	}
+
+	@Override
+	Layer view(boolean accumulators) {
+		prepareTraining();
+		FloatLayer l = new FloatLayer();
+		copyParameters(l);
+		l.floatWeights = floatWeights;
+		l.floatDeltaWeights = floatDeltaWeights;
+		l.optimizer = ( optimizer != null ? optimizer.view() : null );
+		l.mask = mask;
+		l.depth = depth;
+		l.order = order;
+		l.waves = waves;
+		l.floatTotalDeltaWeights = ( accumulators ? new float[floatWeights.length] : floatTotalDeltaWeights );
+		l.batchGradients = ( accumulators ? new double[size] : batchGradients );
+		return l;
+	}
+
+	@Override
+	void accumulate(Layer l) {
+		float[] other = ((FloatLayer) l).floatTotalDeltaWeights;
+		for (int w=0; w<floatTotalDeltaWeights.length; w++) {
+			floatTotalDeltaWeights[w] += other[w];
+		}
+		for (int j=0; j<size; j++) {
+			batchGradients[j] += l.batchGradients[j];
+		}
+	}
+
+	@Override
+	public void merge(Layer l) {
+		FloatLayer f = (FloatLayer) l;
+		prepareTraining();
+		f.prepareTraining();
+		for (int w=0; w<floatWeights.length; w++) {
+			floatWeights[w] = ( floatWeights[w] + f.floatWeights[w] ) / 2F;
+			floatDeltaWeights[w] = ( floatDeltaWeights[w] + f.floatDeltaWeights[w] ) / 2F;
+			floatTotalDeltaWeights[w] = ( floatTotalDeltaWeights[w] + f.floatTotalDeltaWeights[w] ) / 2F;
+		}
+	}
+
+	@Override
+	void moveWeights(int n, int[] moved) {
+		floatWeights = move(floatWeights, n, moved);
+		if ( floatDeltaWeights != null ) {
+			floatDeltaWeights = move(floatDeltaWeights, n, moved);
+			floatTotalDeltaWeights = move(floatTotalDeltaWeights, n, moved);
+		}
+	}
+
+	static float[] move(float[] a, int n, int[] moved) {
+		float[] b = new float[n];
+		for (int w=0; w<moved.length; w++) {
+			b[moved[w]] = a[w];
+		}
+		return b;
+	}
+
+}
@@ -0,0 +1,270 @@
+package com.greatnowhere.neural;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.imageio.ImageIO;
+
+/**
+ * Turns image files into network inputs. Files are decoded and resized by several threads at once,
+ * pixels being read directly from the byte raster of the resized image. Each image yields
+ * width * height * channels inputs, value of a channel byte b being b * scale + offset
+ * @author pzeltins
+ *
+ */
+public class ImageLoader {
+
+	public static final int CHANNELS_BGR = 1; // blue, green, red
+	public static final int CHANNELS_RGB = 2; // red, green, blue
+	public static final int CHANNELS_GRAY = 3; // single luma channel
+
+	public static final int LAYOUT_INTERLEAVED = 1; // channels of a pixel next to each other
+	public static final int LAYOUT_PLANAR = 2; // all pixels of first channel, then second...
+
+	/**
+	 * number of files decoded before their samples are handed over, per thread
+	 */
+	static final int FILES_PER_THREAD = 16;
+
+	int width, height;
+	int channels = CHANNELS_BGR;
+	int layout = LAYOUT_INTERLEAVED;
+	/**
+	 * whether pixels are visited column by column, as networks trained by earlier versions of Main expect
+	 */
+	boolean columnMajor = true;
+	double scale = 1D / 255D;
+	double offset = 0D;
+	int threads = Runtime.getRuntime().availableProcessors();
+	ForkJoinPool pool = ForkJoinPool.commonPool();
+	/**
+	 * resized pixels of files read before, null if not used
+	 */
+	FeatureCache cache;
+
+	/**
+	 * Receives inputs of decoded files in file order, on the thread calling load
+	 */
+	public interface Sink {
+		void accept(double[] inputs, String label) throws IOException;
+	}
+
+	/**
+	 * @param width images are resized to this width
+	 * @param height images are resized to this height
+	 */
+	public ImageLoader(int width, int height) {
+		this.width = width;
+		this.height = height;
+	}
+
+	/**
+	 * @param channels CHANNELS_BGR, CHANNELS_RGB or CHANNELS_GRAY
+	 * @param layout LAYOUT_INTERLEAVED or LAYOUT_PLANAR
+	 * @param columnMajor whether pixels are visited column by column rather than row by row
+	 */
+	public void setLayout(int channels, int layout, boolean columnMajor) {
+		this.channels = channels;
+		this.layout = layout;
+		this.columnMajor = columnMajor;
+	}
+
+	/**
+	 * Sets conversion of channel bytes 0...255 to inputs, default 0...1
+	 * @param scale
+	 * @param offset
+	 */
+	public void setNormalization(double scale, double offset) {
+		this.scale = scale;
+		this.offset = offset;
+	}
+
+	/**
+	 * @param threads number of files decoded at once
+	 */
+	public void setThreads(int threads) {
+		this.threads = Math.max(1, threads);
+	}
+
+	/**
+	 * Keeps resized pixels of files in cache, so unchanged files are not decoded again. 
+	 * Cache should be saved once files are loaded
+	 * @param cache can be null
+	 */
+	public void setCache(FeatureCache cache) {
+		if ( cache != null && ( cache.getWidth() != width || cache.getHeight() != height ) )
+			throw new IllegalArgumentException("cache holds " + cache.getWidth() + "x" + cache.getHeight() + " images, loader resizes to " + width + "x" + height);
+		this.cache = cache;
+	}
+	
+	/**
+	 * @return number of inputs of each image
+	 */
+	public int getInputs() {
+		return width * height * ( channels == CHANNELS_GRAY ? 1 : 3 );
+	}
+
+	/**
+	 * Adds readable image files of a directory to trainer's training set, labelled with their file names
+	 * @param dir
+	 * @param target expected output of all images
+	 * @param t
+	 * @return number of images added
+	 * @throws IOException
+	 */
+	public int addTo(Path dir, final double target, final NetworkTrainer t) throws IOException {
+		return load(list(dir), (inputs, label) -> t.addTrainingSet(inputs, target, label), false);
+	}
+
+	/**
+	 * Adds readable image files of a directory to a dataset file
+	 * @param dir
+	 * @param target expected output of all images
+	 * @param w
+	 * @return number of images added
+	 * @throws IOException
+	 */
+	public int addTo(Path dir, final double target, final TrainingStore.Writer w) throws IOException {
+		return load(list(dir), (inputs, label) -> w.add(inputs, target, label), true);
+	}
+
+	/**
+	 * @return regular files of a directory, sorted by name so that samples come in the same order every time
+	 */
+	static List<Path> list(Path dir) throws IOException {
+		List<Path> files = new ArrayList<>();
+		try ( DirectoryStream<Path> ds = Files.newDirectoryStream(dir) ) {
+			for (Path f : ds ) {
+				if ( Files.isRegularFile(f) && Files.isReadable(f) )
+					files.add(f);
+			}
+		}
+		Collections.sort(files);
+		return files;
+	}
+
+	/**
+	 * Decodes files in batches, passing samples of each batch to sink on the caller thread.
+	 * Files that are not images are skipped
+	 * @param files
+	 * @param sink
+	 * @param reuse whether sink copies inputs, so input arrays can be reused by the next batch
+	 * @return number of images passed to sink
+	 * @throws IOException
+	 */
+	public int load(final List<Path> files, Sink sink, boolean reuse) throws IOException {
+		final int batch = threads * FILES_PER_THREAD;
+		final double[][] inputs = new double[Math.min(batch, files.size())][];
+		final boolean[] decoded = new boolean[inputs.length];
+		int count = 0;
+		for (int from=0; from<files.size(); from+=batch) {
+			final int first = from;
+			final int n = Math.min(batch, files.size() - from);
+			final AtomicInteger next = new AtomicInteger();
+			ForkJoinTask<?>[] tasks = new ForkJoinTask<?>[Math.min(threads, n)];
+			for (int i=0; i<tasks.length; i++) {
+				tasks[i] = ForkJoinTask.adapt(() -> {
+					int s;
+					while ( ( s = next.getAndIncrement() ) < n ) {
+						if ( inputs[s] == null || !reuse )
+							inputs[s] = new double[getInputs()];
+						decoded[s] = read(files.get(first + s), inputs[s]);
+					}
+				});
+			}
+			try {
+				Utils.invokeAll(pool, tasks);
+			} catch (UncheckedIOException e) {
+				throw e.getCause();
+			}
+			for (int s=0; s<n; s++) {
+				if ( decoded[s] ) {
+					sink.accept(inputs[s], files.get(first + s).getFileName().toString());
+					count++;
+				}
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Decodes and resizes an image file, or takes its pixels from cache, storing them into inputs
+	 * @return false if file is not an image
+	 */
+	boolean read(Path file, double[] inputs) {
+		try {
+			BasicFileAttributes attrs = ( cache != null ? Files.readAttributes(file, BasicFileAttributes.class) : null );
+			byte[] raster = ( cache != null ? cache.get(file, attrs) : null );
+			if ( raster == null ) {
+				BufferedImage img = ImageIO.read(file.toFile());
+				raster = ( img != null ? resize(img) : new byte[0] );
+				if ( cache != null )
+					cache.put(file, attrs, raster);
+			}
+			if ( raster.length == 0 )
+				return false;
+			extract(raster, inputs);
+			return true;
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * Resizes image and stores its pixels into inputs
+	 * @param img
+	 * @param inputs
+	 */
+	public void extract(BufferedImage img, double[] inputs) {
+		extract(resize(img), inputs);
+	}
+
+	/**
+	 * @return pixels of image resized to width x height, 3 bytes per pixel, blue first, pixels row by row
+	 */
+	byte[] resize(BufferedImage img) {
+		BufferedImage resized = new BufferedImage(width, height, BufferedImage.TYPE_3BYTE_BGR);
+		Graphics2D g = resized.createGraphics();
+		g.drawImage(img, 0, 0, width, height, null);
+		g.dispose();
+		return ((DataBufferByte) resized.getRaster().getDataBuffer()).getData();
+	}
+
+	/**
+	 * Stores resized pixels into inputs according to channels, layout and normalization
+	 */
+	void extract(byte[] raster, double[] inputs) {
+		int pixels = width * height;
+		int c = ( channels == CHANNELS_GRAY ? 1 : 3 );
+		int p = 0;
+		for (int a=0; a<( columnMajor ? width : height ); a++) {
+			for (int b=0; b<( columnMajor ? height : width ); b++, p++) {
+				int src = 3 * ( columnMajor ? b * width + a : a * width + b );
+				int blue = raster[src] & 0xFF, green = raster[src + 1] & 0xFF, red = raster[src + 2] & 0xFF;
+				if ( channels == CHANNELS_GRAY ) {
+					inputs[p] = ( 0.299D * red + 0.587D * green + 0.114D * blue ) * scale + offset;
+					continue;
+				}
+				int dst = ( layout == LAYOUT_PLANAR ? p : c * p );
+				int step = ( layout == LAYOUT_PLANAR ? pixels : 1 );
+				inputs[dst] = ( channels == CHANNELS_RGB ? red : blue ) * scale + offset;
+				inputs[dst + step] = green * scale + offset;
+				inputs[dst + 2 * step] = ( channels == CHANNELS_RGB ? blue : red ) * scale + offset;
+			}
+		}
+	}
+
+}
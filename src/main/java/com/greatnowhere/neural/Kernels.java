@@ -0,0 +1,168 @@
+package com.greatnowhere.neural;
+
+/**
+ * Inner loops of layer computation and training. This class is the scalar implementation,
+ * VectorKernels overrides it with SIMD code based on the jdk.incubator.vector module. Vector kernels are
+ * compiled by the "vector" Maven profile on JDK 17+ and used when the JVM runs with
+ * --add-modules jdk.incubator.vector, otherwise scalar kernels are used.
+ * Setting system property neural.kernels=scalar disables vector kernels
+ * @author pzeltins
+ *
+ */
+public class Kernels {
+
+	static final Kernels INSTANCE = load();
+
+	private static Kernels load() {
+		if ( !"scalar".equals(System.getProperty("neural.kernels")) ) {
+			try {
+				return (Kernels) Class.forName("com.greatnowhere.neural.VectorKernels").getDeclaredConstructor().newInstance();
+			} catch (Throwable e) {
+				// not compiled, vector module not added, or JVM too old
+			}
+		}
+		return new Kernels();
+	}
+
+	/**
+	 * @return name of kernel implementation in use
+	 */
+	public static String getName() {
+		return INSTANCE.name();
+	}
+
+	String name() {
+		return "scalar";
+	}
+
+	/**
+	 * @return sum of w[w0 + i] * x[x0 + i] for i < n
+	 */
+	double dot(double[] w, int w0, double[] x, int x0, int n) {
+		double t = 0D;
+		for (int i=0; i<n; i++) {
+			t += w[w0 + i] * x[x0 + i];
+		}
+		return t;
+	}
+
+	double dot(float[] w, int w0, double[] x, int x0, int n) {
+		double t = 0D;
+		for (int i=0; i<n; i++) {
+			t += w[w0 + i] * x[x0 + i];
+		}
+		return t;
+	}
+
+	/**
+	 * Dot products of 4 weight rows, stride apart, with the same inputs, added to sums[s...s+3]
+	 */
+	void dot4(double[] w, int w0, int stride, double[] x, int x0, int n, double[] sums, int s) {
+		int w1 = w0 + stride, w2 = w1 + stride, w3 = w2 + stride;
+		double t0 = 0D, t1 = 0D, t2 = 0D, t3 = 0D;
+		for (int i=0; i<n; i++) {
+			double v = x[x0 + i];
+			t0 += w[w0 + i] * v;
+			t1 += w[w1 + i] * v;
+			t2 += w[w2 + i] * v;
+			t3 += w[w3 + i] * v;
+		}
+		sums[s] += t0;
+		sums[s + 1] += t1;
+		sums[s + 2] += t2;
+		sums[s + 3] += t3;
+	}
+
+	void dot4(float[] w, int w0, int stride, double[] x, int x0, int n, double[] sums, int s) {
+		int w1 = w0 + stride, w2 = w1 + stride, w3 = w2 + stride;
+		double t0 = 0D, t1 = 0D, t2 = 0D, t3 = 0D;
+		for (int i=0; i<n; i++) {
+			double v = x[x0 + i];
+			t0 += w[w0 + i] * v;
+			t1 += w[w1 + i] * v;
+			t2 += w[w2 + i] * v;
+			t3 += w[w3 + i] * v;
+		}
+		sums[s] += t0;
+		sums[s + 1] += t1;
+		sums[s + 2] += t2;
+		sums[s + 3] += t3;
+	}
+
+	/**
+	 * y[y0 + i] += a * x[x0 + i] for i < n
+	 */
+	void axpy(double a, double[] x, int x0, double[] y, int y0, int n) {
+		for (int i=0; i<n; i++) {
+			y[y0 + i] += a * x[x0 + i];
+		}
+	}
+
+	void axpy(double a, float[] x, int x0, double[] y, int y0, int n) {
+		for (int i=0; i<n; i++) {
+			y[y0 + i] += a * x[x0 + i];
+		}
+	}
+
+	/**
+	 * Backprop weight update with momentum: delta = k * x + delta * momentum, weight += delta,
+	 * for weights and deltas w0...w0+n-1 and inputs x0...x0+n-1
+	 */
+	void adjust(double k, double[] x, int x0, double[] deltas, double[] weights, int w0, int n, double momentum) {
+		for (int i=0; i<n; i++) {
+			double delta = k * x[x0 + i] + deltas[w0 + i] * momentum;
+			deltas[w0 + i] = delta;
+			weights[w0 + i] += delta;
+		}
+	}
+
+	void adjust(double k, double[] x, int x0, float[] deltas, float[] weights, int w0, int n, double momentum) {
+		float kf = (float) k, m = (float) momentum;
+		for (int i=0; i<n; i++) {
+			float delta = kf * (float) x[x0 + i] + deltas[w0 + i] * m;
+			deltas[w0 + i] = delta;
+			weights[w0 + i] += delta;
+		}
+	}
+
+	/**
+	 * @return sum of w[k] * x[x0 + columns[k]] for from <= k < to
+	 */
+	double sparseDot(double[] w, int from, int to, int[] columns, double[] x, int x0) {
+		double t = 0D;
+		for (int k=from; k<to; k++) {
+			t += w[k] * x[x0 + columns[k]];
+		}
+		return t;
+	}
+
+	/**
+	 * y[y0 + columns[k]] += a * w[k] for from <= k < to
+	 */
+	void sparseAxpy(double a, double[] w, int from, int to, int[] columns, double[] y, int y0) {
+		for (int k=from; k<to; k++) {
+			y[y0 + columns[k]] += a * w[k];
+		}
+	}
+
+	/**
+	 * y[k] += a * x[x0 + columns[k]] for from <= k < to
+	 */
+	void gatherAxpy(double a, double[] x, int x0, int[] columns, double[] y, int from, int to) {
+		for (int k=from; k<to; k++) {
+			y[k] += a * x[x0 + columns[k]];
+		}
+	}
+
+	/**
+	 * Backprop weight update with momentum of weights from...to-1, input of weight k being x[x0 + columns[k]]
+	 */
+	void sparseAdjust(double k, double[] x, int x0, int[] columns, double[] deltas, double[] weights, int from, int to, double momentum) {
+		for (int i=from; i<to; i++) {
+			double delta = k * x[x0 + columns[i]] + deltas[i] * momentum;
+			deltas[i] = delta;
+			weights[i] += delta;
+		}
+	}
+
+}
@@ -0,0 +1,90 @@
+package com.greatnowhere.neural;
+
+/**
+ * Histogram of durations in nanoseconds. Each power of two is split into 8 buckets, so recorded values 
+ * are kept within 12.5% and recording is a few instructions without allocation. Not thread safe, 
+ * parallel training keeps one histogram per worker and adds them together
+ * @author pzeltins
+ *
+ */
+public class LatencyHistogram {
+
+	static final int SUB_BUCKET_BITS = 3;
+	static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+	long[] counts = new long[( 64 - SUB_BUCKET_BITS ) * SUB_BUCKETS];
+	long count;
+	long total;
+	long max;
+
+	/**
+	 * @param nanos duration, negative values are recorded as 0
+	 */
+	public void record(long nanos) {
+		long v = Math.max(0L, nanos);
+		counts[bucket(v)]++;
+		count++;
+		total += v;
+		max = Math.max(max, v);
+	}
+
+	/**
+	 * Adds values recorded by another histogram to this one
+	 * @param h
+	 */
+	public void add(LatencyHistogram h) {
+		for (int i=0; i<counts.length; i++) {
+			counts[i] += h.counts[i];
+		}
+		count += h.count;
+		total += h.total;
+		max = Math.max(max, h.max);
+	}
+
+	static int bucket(long v) {
+		if ( v < SUB_BUCKETS )
+			return (int) v;
+		int exp = 63 - Long.numberOfLeadingZeros(v);
+		return ( exp - SUB_BUCKET_BITS + 1 ) * SUB_BUCKETS + (int) ( ( v >>> ( exp - SUB_BUCKET_BITS ) ) & ( SUB_BUCKETS - 1 ) );
+	}
+
+	/**
+	 * @return smallest value falling into bucket
+	 */
+	static long lowerBound(int bucket) {
+		if ( bucket < SUB_BUCKETS )
+			return bucket;
+		int exp = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+		return (long) ( SUB_BUCKETS + bucket % SUB_BUCKETS ) << ( exp - SUB_BUCKET_BITS );
+	}
+
+	public long getCount() {
+		return count;
+	}
+
+	public long getMax() {
+		return max;
+	}
+
+	public double getMean() {
+		return ( count > 0 ? (double) total / count : 0D );
+	}
+
+	/**
+	 * @param percentile 0...100
+	 * @return value below which given percentage of recorded values fall, rounded up to bucket bound
+	 */
+	public long getPercentile(double percentile) {
+		if ( count == 0 )
+			return 0L;
+		long rank = (long) Math.ceil(percentile / 100D * count);
+		long seen = 0L;
+		for (int i=0; i<counts.length; i++) {
+			seen += counts[i];
+			if ( seen >= rank && seen > 0 )
+				return ( i + 1 < counts.length ? Math.min(max, lowerBound(i + 1) - 1) : max );
+		}
+		return max;
+	}
+
+}
@@ -0,0 +1,798 @@
+package com.greatnowhere.neural;
+
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Layer of neurons with weights and training state kept in flat row-major arrays.
+ * Each row holds input weights of one neuron, last element of the row being bias weight.
+ * Neurons read their inputs from a window of the network's unit array (inputs, hidden, outputs)
+ * @author pzeltins
+ *
+ */
+public class Layer {
+
+	public static final int ACTIVATION_TANH = 1; // -1...1, used in hidden layer
+	public static final int ACTIVATION_SIGMOID = 2; // 0...1, used in output layer
+	
+	public static final int ACTIVATION_MODE_EXACT = 1; // Math.tanh and Math.exp
+	public static final int ACTIVATION_MODE_TABLE = 2; // piecewise-linear lookup table, see Activation
+	public static final int ACTIVATION_MODE_RATIONAL = 3; // rational approximation, see Activation
+	
+	public static final int PRECISION_DOUBLE = 1; // weights and training state kept as double
+	public static final int PRECISION_FLOAT = 2; // weights and training state kept as float, see FloatLayer
+
+	/**
+	 * Number of neurons and source units computed together by batch kernel
+	 */
+	static final int BATCH_ROWS = 4;
+	static final int BATCH_SPAN = 512;
+	/**
+	 * Double precision layers with fewer connections than this share of rows x columns are kept
+	 * in sparse rows, see SparseLayer
+	 */
+	static final double SPARSE_FILL = 0.3D;
+	
+	public static final double RPROP_INITIAL_UPDATE_VALUE = 0.1D;
+	/**
+	 * RPROP min update value
+	 */
+	public final static double MIN_RPROP_UPDATE_VALUE = 1E-6D;
+	/**
+	 * RPROP max update value
+	 */
+	public final static double MAX_RPROP_UPDATE_VALUE = 50;
+
+	/**
+	 * number of neurons in this layer
+	 */
+	int size;
+	/**
+	 * index of this layer's first neuron in network unit array
+	 */
+	int firstUnit;
+	/**
+	 * index of first source unit
+	 */
+	int srcFrom;
+	/**
+	 * number of source units
+	 */
+	int fanIn;
+	/**
+	 * row length, fanIn + 1 for bias
+	 */
+	int stride;
+	int activation;
+	int activationMode = ACTIVATION_MODE_EXACT;
+	int trainingMode = Neuron.TRAINING_MODE_STOCHASTIC;
+
+	double[] weights;
+	/**
+	 * Last change of the weight. Used for momentum calculation
+	 */
+	double[] deltaWeights;
+	/**
+	 * Total accumulated weight delta in batch learning cycle
+	 */
+	double[] totalDeltaWeights;
+	/**
+	 * Accumulated gradient of each neuron in batch learning cycle
+	 */
+	double[] batchGradients;
+	/**
+	 * Computes weight changes from gradients, null for momentum backpropagation
+	 */
+	Optimizer optimizer;
+	/**
+	 * Gradients of a row in stochastic mode with optimizer
+	 */
+	double[] rowGradients;
+	/**
+	 * Connected weights, null if every neuron is connected to every source unit
+	 */
+	boolean[] mask;
+	/**
+	 * whether mask may be shared with copies of this layer, in which case it is cloned before being modified
+	 */
+	boolean sharedMask;
+	/**
+	 * layer number of each neuron, see Neuron.LAYER_INPUT
+	 */
+	int[] depth;
+	/**
+	 * Neurons of a layer reading its own outputs, grouped into wavefronts so that neurons of a wavefront
+	 * read only neurons of earlier ones. Null until built by schedule(), dropped when connections change
+	 */
+	int[] order;
+	/**
+	 * index in order of first neuron of each wavefront, followed by size
+	 */
+	int[] waves;
+
+	public Layer(int size, int firstUnit, int srcFrom, int fanIn, int activation) {
+		this(size, firstUnit, srcFrom, fanIn, activation, true);
+	}
+	
+	/**
+	 * @param randomize whether weights should be initialized to random values, or left zero to be loaded
+	 */
+	Layer(int size, int firstUnit, int srcFrom, int fanIn, int activation, boolean randomize) {
+		this.size = size;
+		this.firstUnit = firstUnit;
+		this.srcFrom = srcFrom;
+		this.fanIn = fanIn;
+		this.stride = fanIn + 1;
+		this.activation = activation;
+		allocate();
+		if ( randomize )
+			randomize();
+	}
+
+	/**
+	 * Create new layer with the same dimensions, connections and parameters as source
+	 * Does not copy weights
+	 * @param source
+	 */
+	public Layer(Layer source) {
+		source.copyParameters(this);
+		allocate();
+		// source is only read, so that several threads can copy it at once. Mask marked as shared beforehand
+		// is cloned once either layer gets a new connection, see shareMask
+		mask = ( source.sharedMask || source.mask == null ? source.mask : source.mask.clone() );
+		sharedMask = source.sharedMask;
+		depth = source.depth.clone();
+		randomize();
+	}
+	
+	Layer() {
+	}
+	
+	/**
+	 * @return new layer of the same precision, dimensions, connections and parameters, with random weights
+	 */
+	Layer copyStructure() {
+		return new Layer(this);
+	}
+	
+	/**
+	 * Creates a layer of specified precision with the same dimensions, connections, parameters and weights.
+	 * Training state is not copied
+	 * @param precision
+	 * @return
+	 */
+	Layer withPrecision(int precision) {
+		if ( precision == getPrecision() )
+			return this;
+		Layer l = ( precision == PRECISION_FLOAT ? new FloatLayer() : new Layer() );
+		copyParameters(l);
+		l.allocate();
+		if ( mask != null )
+			l.mask = mask.clone();
+		l.depth = depth.clone();
+		for (int w=0; w<stride * size; w++) {
+			l.setWeight(w, getWeight(w));
+		}
+		return l;
+	}
+	
+	/**
+	 * @return whether this layer's connections are better kept in sparse rows, see SPARSE_FILL
+	 */
+	boolean suitsSparse() {
+		return ( getPrecision() == PRECISION_DOUBLE && getConnectionCount() < SPARSE_FILL * size * stride );
+	}
+	
+	/**
+	 * @return this layer, or a layer with the same weights and training state in the layout 
+	 * suiting its fill ratio
+	 */
+	Layer withLayout() {
+		return ( mask != null && suitsSparse() ? new SparseLayer(this) : this );
+	}
+	
+	/**
+	 * @return this layer, or a dense layer with the same weights and connections if this one is sparse. 
+	 * Training state is not copied
+	 */
+	Layer dense() {
+		return this;
+	}
+	
+	/**
+	 * Copies dimensions and training parameters of this layer to l
+	 */
+	void copyParameters(Layer l) {
+		l.size = size;
+		l.firstUnit = firstUnit;
+		l.srcFrom = srcFrom;
+		l.fanIn = fanIn;
+		l.stride = stride;
+		l.activation = activation;
+		l.activationMode = activationMode;
+		l.trainingMode = trainingMode;
+	}
+	
+	/**
+	 * @return PRECISION_DOUBLE or PRECISION_FLOAT
+	 */
+	public int getPrecision() {
+		return PRECISION_DOUBLE;
+	}
+	
+	double getWeight(int w) {
+		return weights[w];
+	}
+	
+	void setWeight(int w, double value) {
+		weights[w] = value;
+	}
+
+	/**
+	 * Allocates weights and per-neuron arrays for current dimensions
+	 */
+	void allocate() {
+		weights = new double[size * stride];
+		batchGradients = new double[size];
+		depth = new int[size];
+	}
+	
+	/**
+	 * Allocates training state arrays. Layers used only for computing never allocate them
+	 */
+	void prepareTraining() {
+		if ( deltaWeights != null )
+			return;
+		int n = weights.length;
+		deltaWeights = new double[n];
+		totalDeltaWeights = new double[n];
+	}
+
+	/**
+	 * @param o optimizer this layer gets an instance of, with state of its own, or null
+	 */
+	void setOptimizer(Optimizer o) {
+		optimizer = ( o != null ? o.create(size * stride, getPrecision()) : null );
+	}
+	
+	/**
+	 * Starts optimizer step of a sample in stochastic mode, see Optimizer.next
+	 */
+	void nextSample() {
+		if ( optimizer != null && stepsPerSample() )
+			optimizer.next();
+	}
+	
+	/**
+	 * @return whether optimizer steps weights after each sample rather than when batch is committed
+	 */
+	boolean stepsPerSample() {
+		return ( trainingMode == Neuron.TRAINING_MODE_STOCHASTIC && !optimizer.isBatchOnly() );
+	}
+	
+	/**
+	 * Passes error of the batch about to be committed to optimizer, see Optimizer.batchError
+	 * @param error
+	 */
+	void batchError(double error) {
+		if ( optimizer != null && !stepsPerSample() )
+			optimizer.batchError(error);
+	}
+
+	/**
+	 * Assigns random weights -1...1 to all connections. Copies of a layer get random weights of their own,
+	 * so this is most of the cost of copying a network. Each thread draws from its own generator,
+	 * so specimens can be created concurrently without contending for a shared seed
+	 */
+	void randomize() {
+		ThreadLocalRandom r = ThreadLocalRandom.current();
+		for (int w=0; w<weights.length; w++) {
+			weights[w] = ( mask == null || mask[w] ? 2D * (r.nextDouble() - 0.5D) : 0D );
+		}
+	}
+	
+	/**
+	 * @return random weight -1...1 of a new connection
+	 */
+	static double randomWeight() {
+		return 2D * (ThreadLocalRandom.current().nextDouble() - 0.5D);
+	}
+
+	/**
+	 * Computes neurons from (inclusive) to (exclusive), storing outputs and derivatives in unit arrays
+	 * @param units
+	 * @param derivatives can be null if not needed for learning
+	 * @param from
+	 * @param to
+	 */
+	void compute(double[] units, double[] derivatives, int from, int to) {
+		for (int j=from; j<to; j++) {
+			int row = j * stride;
+			// linear transfer function
+			double t = getWeight(row + fanIn) + dot(row, units, srcFrom, fanIn);
+			double y = activate(t);
+			units[firstUnit + j] = y;
+			if ( derivatives != null )
+				derivatives[firstUnit + j] = derivative(y);
+		}
+	}
+	
+	/**
+	 * Computes neurons order[from]...order[to-1], see schedule()
+	 */
+	void computeScheduled(double[] units, double[] derivatives, int from, int to) {
+		for (int k=from; k<to; k++) {
+			compute(units, derivatives, order[k], order[k] + 1);
+		}
+	}
+	
+	/**
+	 * @return whether neurons of this layer read outputs of other neurons of the same layer
+	 */
+	boolean readsSelf() {
+		return ( srcFrom + fanIn > firstUnit && srcFrom < firstUnit + size );
+	}
+	
+	/**
+	 * Groups neurons into wavefronts by dependency depth: first wavefront holds neurons not connected to 
+	 * other neurons of this layer, each next one neurons connected only to those of earlier wavefronts.
+	 * Neuron depth set by mutation is not used, as connections made later can break it
+	 * @return neuron order, see order
+	 * @throws IllegalStateException if neurons are connected in a cycle
+	 */
+	int[] schedule() {
+		if ( order != null )
+			return order;
+		int selfFrom = Math.max(srcFrom, firstUnit), selfTo = Math.min(srcFrom + fanIn, firstUnit + size);
+		int[] wave = new int[size];
+		Arrays.fill(wave, -1);
+		int[] newOrder = new int[size];
+		int[] newWaves = new int[size + 1];
+		int placed = 0, w = 0;
+		while ( placed < size ) {
+			newWaves[w] = placed;
+			for (int j=0; j<size; j++) {
+				boolean ready = ( wave[j] < 0 );
+				for (int unit=selfFrom; unit<selfTo && ready; unit++) {
+					int k = unit - firstUnit;
+					ready = ( !isConnected(j, unit) || ( wave[k] >= 0 && wave[k] < w ) );
+				}
+				if ( ready ) {
+					wave[j] = w;
+					newOrder[placed++] = j;
+				}
+			}
+			if ( placed == newWaves[w] )
+				throw new IllegalStateException("neurons of layer are connected in a cycle");
+			w++;
+		}
+		newWaves[w] = size;
+		waves = Arrays.copyOf(newWaves, w + 1);
+		order = newOrder;
+		return order;
+	}
+	
+	/**
+	 * Computes all neurons for a batch of samples. Units of each sample are stored one after another, 
+	 * unitCount apart. Weights are traversed in blocks of BATCH_ROWS neurons by BATCH_SPAN source units, 
+	 * so each block is loaded once and used for the whole batch
+	 * @param units
+	 * @param unitCount
+	 * @param count number of samples
+	 * @param sums scratch array of at least count * BATCH_ROWS
+	 */
+	void computeBatch(double[] units, int unitCount, int count, double[] sums) {
+		// neurons reading outputs of this layer must be computed one at a time, in wavefront order
+		int[] order = ( readsSelf() ? schedule() : null );
+		int rows = ( order != null ? 1 : BATCH_ROWS );
+		for (int k=0; k<size; k+=rows) {
+			int j0 = ( order != null ? order[k] : k );
+			int n = Math.min(rows, size - k);
+			for (int s=0; s<count; s++) {
+				for (int r=0; r<n; r++) {
+					sums[s * rows + r] = getWeight((j0 + r) * stride + fanIn);
+				}
+			}
+			for (int k0=0; k0<fanIn; k0+=BATCH_SPAN) {
+				int k1 = Math.min(fanIn, k0 + BATCH_SPAN);
+				for (int s=0; s<count; s++) {
+					int in = s * unitCount + srcFrom;
+					if ( n == 4 ) {
+						dot4(j0 * stride + k0, units, in + k0, k1 - k0, sums, s * rows);
+					} else {
+						for (int r=0; r<n; r++) {
+							sums[s * rows + r] += dot((j0 + r) * stride + k0, units, in + k0, k1 - k0);
+						}
+					}
+				}
+			}
+			for (int s=0; s<count; s++) {
+				for (int r=0; r<n; r++) {
+					units[s * unitCount + firstUnit + j0 + r] = activate(sums[s * rows + r]);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * @return sum of products of weights from w0 on with x[x0...x0+n), see Kernels.dot.
+	 * Inner loops of dense layers go through this and the following methods, overridden by layers
+	 * keeping weights in arrays of other precision
+	 */
+	double dot(int w0, double[] x, int x0, int n) {
+		return Kernels.INSTANCE.dot(weights, w0, x, x0, n);
+	}
+	
+	/**
+	 * Dot products of 4 weight rows from w0 on with x, added to sums[s...s+3], see Kernels.dot4
+	 */
+	void dot4(int w0, double[] x, int x0, int n, double[] sums, int s) {
+		Kernels.INSTANCE.dot4(weights, w0, stride, x, x0, n, sums, s);
+	}
+	
+	/**
+	 * y[y0 + i] += a * weight w0 + i for i < n, see Kernels.axpy
+	 */
+	void axpy(double a, int w0, double[] y, int y0, int n) {
+		Kernels.INSTANCE.axpy(a, weights, w0, y, y0, n);
+	}
+	
+	double activate(double t) {
+		return ( activation == ACTIVATION_TANH ? Activation.tanh(t, activationMode) : Activation.sigmoid(t, activationMode) );
+	}
+	
+	/**
+	 * @param y neuron output
+	 * @return derivative of activation function
+	 */
+	double derivative(double y) {
+		return ( activation == ACTIVATION_TANH ? Utils.d_tanh(y) : Utils.d_sigmoid(y) );
+	}
+
+	/**
+	 * Adds gradients of this layer's neurons, weighted by connection weight, to errors of source units
+	 * @param gradients
+	 * @param errors
+	 */
+	void backpropagate(double[] gradients, double[] errors) {
+		for (int j=0; j<size; j++) {
+			axpy(gradients[firstUnit + j], j * stride, errors, srcFrom, fanIn);
+		}
+	}
+
+	/**
+	 * Adds gradient of neuron j, weighted by connection weight, to errors of its source units from fromUnit on
+	 * @param j
+	 * @param gradient
+	 * @param errors
+	 * @param fromUnit first source unit whose error is needed
+	 */
+	void backpropagate(int j, double gradient, double[] errors, int fromUnit) {
+		int from = Math.max(srcFrom, fromUnit);
+		axpy(gradient, j * stride + from - srcFrom, errors, from, srcFrom + fanIn - from);
+	}
+
+	/**
+	 * Adjusts input weights of neuron j after a single training set
+	 * @param j
+	 * @param gradient
+	 * @param units
+	 * @param learningRate
+	 * @param momentum. not used by optimizers
+	 */
+	void adjustWeights(int j, double gradient, double[] units, double learningRate, double momentum) {
+		prepareTraining();
+		batchGradients[j] += gradient;
+		if ( optimizer != null ) {
+			adjustGradients(j, gradient, units, learningRate);
+			return;
+		}
+		// no adjustments in batch gradient mode - we only need total gradient for batch
+		if ( trainingMode == Neuron.TRAINING_MODE_BATCH_GRADIENT )
+			return;
+
+		double k = learningRate * gradient;
+		int row = j * stride;
+		if ( trainingMode == Neuron.TRAINING_MODE_BATCH ) {
+			// batch backprop only sums weight deltas, momentum is applied once when committing.
+			// disconnected weights are skipped when committing
+			Kernels.INSTANCE.axpy(k, units, srcFrom, totalDeltaWeights, row, fanIn);
+			totalDeltaWeights[row + fanIn] += k;
+			return;
+		}
+		if ( mask == null ) {
+			Kernels.INSTANCE.adjust(k, units, srcFrom, deltaWeights, weights, row, fanIn, momentum);
+			adjustWeight(row + fanIn, 1D, k, gradient, momentum);
+			return;
+		}
+		for (int i=0; i<fanIn; i++) {
+			adjustWeight(row + i, units[srcFrom + i], k, gradient, momentum);
+		}
+		adjustWeight(row + fanIn, 1D, k, gradient, momentum);
+	}
+
+	/**
+	 * Sums weight gradients of neuron j with optimizer, stepping its row right away in stochastic mode
+	 * unless optimizer needs whole batches. Both batch modes sum exact gradients of each sample
+	 */
+	void adjustGradients(int j, double gradient, double[] units, double learningRate) {
+		int row = j * stride;
+		if ( !stepsPerSample() ) {
+			Kernels.INSTANCE.axpy(gradient, units, srcFrom, totalDeltaWeights, row, fanIn);
+			totalDeltaWeights[row + fanIn] += gradient;
+			return;
+		}
+		// own row array rather than totalDeltaWeights, which Hogwild workers share
+		if ( rowGradients == null || rowGradients.length != stride )
+			rowGradients = new double[stride];
+		Kernels.INSTANCE.axpy(gradient, units, srcFrom, rowGradients, 0, fanIn);
+		rowGradients[fanIn] = gradient;
+		if ( mask != null ) {
+			for (int i=0; i<stride; i++) {
+				rowGradients[i] = ( mask[row + i] ? rowGradients[i] : 0D );
+			}
+		}
+		optimizer.step(weights, row, rowGradients, 0, stride, learningRate);
+	}
+
+	private void adjustWeight(int w, double input, double k, double gradient, double momentum) {
+		if ( mask != null && !mask[w] )
+			return;
+		// http://en.wikipedia.org/wiki/Backpropagation
+		double deltaW = k * input + deltaWeights[w] * momentum;
+		deltaWeights[w] = deltaW;
+		weights[w] += deltaW;
+	}
+
+	/**
+	 * Used for batch learning - commits accumulated changes to weights
+	 * @param units
+	 * @param learningRate
+	 * @param momentum
+	 */
+	void commitWeights(double[] units, double learningRate, double momentum) {
+		prepareTraining();
+		if ( optimizer != null ) {
+			if ( !stepsPerSample() )
+				commitGradients(learningRate);
+			Arrays.fill(batchGradients, 0D);
+			return;
+		}
+		for (int j=0; j<size; j++) {
+			if ( trainingMode != Neuron.TRAINING_MODE_STOCHASTIC ) {
+				double k = learningRate * batchGradients[j];
+				int row = j * stride;
+				for (int i=0; i<fanIn; i++) {
+					commitWeight(row + i, units[srcFrom + i], k, momentum);
+				}
+				commitWeight(row + fanIn, 1D, k, momentum);
+			}
+			batchGradients[j] = 0D;
+		}
+	}
+
+	/**
+	 * Steps whole layer with gradients summed over the batch
+	 */
+	void commitGradients(double learningRate) {
+		if ( mask != null ) {
+			for (int w=0; w<totalDeltaWeights.length; w++) {
+				totalDeltaWeights[w] = ( mask[w] ? totalDeltaWeights[w] : 0D );
+			}
+		}
+		optimizer.next();
+		optimizer.step(weights, 0, totalDeltaWeights, 0, weights.length, learningRate);
+	}
+
+	private void commitWeight(int w, double input, double k, double momentum) {
+		if ( mask == null || mask[w] ) {
+			double deltaW = ( trainingMode == Neuron.TRAINING_MODE_BATCH ? totalDeltaWeights[w] : k * input ) + deltaWeights[w] * momentum;
+			deltaWeights[w] = deltaW;
+			weights[w] += deltaW;
+		}
+		totalDeltaWeights[w] = 0D;
+	}
+
+	/**
+	 * Lets copies made from now on share connection mask of this layer. Connections of copies differ
+	 * only by their mutations, so the mask is cloned by whichever layer gets a new connection first.
+	 * Must not be called while the layer is being copied
+	 */
+	void shareMask() {
+		sharedMask = ( mask != null );
+	}
+	
+	/**
+	 * Creates a layer sharing weights and training state with this one. Used by parallel training workers
+	 * @param accumulators whether new layer should have its own batch accumulators
+	 * @return
+	 */
+	Layer view(boolean accumulators) {
+		prepareTraining();
+		Layer l = new Layer();
+		copyParameters(l);
+		l.weights = weights;
+		l.deltaWeights = deltaWeights;
+		l.optimizer = ( optimizer != null ? optimizer.view() : null );
+		l.mask = mask;
+		l.depth = depth;
+		l.order = order;
+		l.waves = waves;
+		l.totalDeltaWeights = ( accumulators ? new double[weights.length] : totalDeltaWeights );
+		l.batchGradients = ( accumulators ? new double[size] : batchGradients );
+		return l;
+	}
+	
+	/**
+	 * Adds batch accumulators of another layer with the same dimensions to this layer's accumulators
+	 * @param l
+	 */
+	void accumulate(Layer l) {
+		for (int w=0; w<totalDeltaWeights.length; w++) {
+			totalDeltaWeights[w] += l.totalDeltaWeights[w];
+		}
+		for (int j=0; j<size; j++) {
+			batchGradients[j] += l.batchGradients[j];
+		}
+	}
+	
+	/**
+	 * Merges this layer with target layer. Both must have the same dimensions
+	 * @param l
+	 */
+	public void merge(Layer l) {
+		prepareTraining();
+		l.prepareTraining();
+		for (int w=0; w<weights.length; w++) {
+			weights[w] = ( weights[w] + l.weights[w] ) / 2D;
+			deltaWeights[w] = ( deltaWeights[w] + l.deltaWeights[w] ) / 2D;
+			totalDeltaWeights[w] = ( totalDeltaWeights[w] + l.totalDeltaWeights[w] ) / 2D;
+		}
+	}
+
+	/**
+	 * @param j
+	 * @param unit
+	 * @return true if neuron j is connected to specified source unit
+	 */
+	boolean isConnected(int j, int unit) {
+		if ( unit < srcFrom || unit >= srcFrom + fanIn )
+			return false;
+		return ( mask == null || mask[j * stride + unit - srcFrom] );
+	}
+
+	/**
+	 * Connects neuron j to specified source unit, widening source window if needed
+	 * @param j
+	 * @param unit
+	 * @return true if connected, false if connection already exists
+	 */
+	boolean connect(int j, int unit) {
+		if ( isConnected(j, unit) )
+			return false;
+		if ( unit < srcFrom || unit >= srcFrom + fanIn ) {
+			int from = Math.min(srcFrom, unit);
+			int to = Math.max(srcFrom + fanIn, unit + 1);
+			reshape(size, from, to - from);
+		} else if ( mask == null ) {
+			reshape(size, srcFrom, fanIn);
+		} else if ( sharedMask ) {
+			mask = mask.clone();
+			sharedMask = false;
+		}
+		int w = j * stride + unit - srcFrom;
+		mask[w] = true;
+		setWeight(w, randomWeight());
+		order = null;
+		return true;
+	}
+
+	/**
+	 * Appends a source unit at the end of source window
+	 * @param connected whether every neuron should be connected to new unit
+	 */
+	void addSource(boolean connected) {
+		reshape(size, srcFrom, fanIn + 1);
+		if ( connected ) {
+			for (int j=0; j<size; j++) {
+				connect(j, srcFrom + fanIn - 1);
+			}
+		}
+	}
+
+	/**
+	 * Appends a neuron connected only to bias and to source units in range from (inclusive) to (exclusive)
+	 * @param from
+	 * @param to
+	 * @return index of new neuron
+	 */
+	int addNeuron(int from, int to) {
+		int j = size;
+		reshape(size + 1, srcFrom, fanIn);
+		int bias = j * stride + fanIn;
+		mask[bias] = true;
+		setWeight(bias, randomWeight());
+		for (int unit=from; unit<to; unit++) {
+			if ( unit >= srcFrom && unit < srcFrom + fanIn )
+				connect(j, unit);
+		}
+		return j;
+	}
+
+	/**
+	 * Reallocates arrays to new dimensions, keeping existing weights and state.
+	 * Newly created weights are left disconnected
+	 * @param newSize
+	 * @param newSrcFrom
+	 * @param newFanIn
+	 */
+	void reshape(int newSize, int newSrcFrom, int newFanIn) {
+		int newStride = newFanIn + 1;
+		int n = newSize * newStride;
+		// new position of each weight
+		int[] moved = new int[size * stride];
+		boolean[] newMask = new boolean[n];
+		int shift = srcFrom - newSrcFrom;
+		for (int j=0; j<size; j++) {
+			int row = j * stride;
+			int newRow = j * newStride;
+			for (int i=0; i<stride; i++) {
+				// bias stays in the last column
+				int w = row + i;
+				int nw = ( i == fanIn ? newRow + newFanIn : newRow + shift + i );
+				moved[w] = nw;
+				newMask[nw] = ( mask == null || mask[w] );
+			}
+		}
+		moveWeights(n, moved);
+		mask = newMask;
+		sharedMask = false;
+		batchGradients = Arrays.copyOf(batchGradients, newSize);
+		depth = Arrays.copyOf(depth, newSize);
+		order = null;
+		size = newSize;
+		srcFrom = newSrcFrom;
+		fanIn = newFanIn;
+		stride = newStride;
+		// optimizer state is indexed by weight, so it starts over
+		if ( optimizer != null )
+			setOptimizer(optimizer);
+	}
+
+	/**
+	 * Reallocates weights and per-weight training state to n weights, weight w being moved to moved[w]
+	 */
+	void moveWeights(int n, int[] moved) {
+		weights = move(weights, n, moved);
+		if ( deltaWeights != null ) {
+			deltaWeights = move(deltaWeights, n, moved);
+			totalDeltaWeights = move(totalDeltaWeights, n, moved);
+		}
+	}
+	
+	static double[] move(double[] a, int n, int[] moved) {
+		double[] b = new double[n];
+		for (int w=0; w<moved.length; w++) {
+			b[moved[w]] = a[w];
+		}
+		return b;
+	}
+
+	/**
+	 * @return number of connections including bias
+	 */
+	public int getConnectionCount() {
+		if ( mask == null )
+			return size * stride;
+		int c = 0;
+		for (boolean m : mask ) {
+			if ( m ) c++;
+		}
+		return c;
+	}
+
+	public int getSize() {
+		return size;
+	}
+
+}
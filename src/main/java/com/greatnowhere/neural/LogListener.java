@@ -0,0 +1,23 @@
+package com.greatnowhere.neural;
+
+import java.io.PrintStream;
+
+/**
+ * Prints a line for each epoch
+ * @author pzeltins
+ *
+ */
+public class LogListener implements TrainingListener {
+
+	PrintStream out;
+
+	public LogListener(PrintStream out) {
+		this.out = out;
+	}
+
+	@Override
+	public void epochFinished(EpochStats stats) {
+		out.println(stats);
+	}
+
+}
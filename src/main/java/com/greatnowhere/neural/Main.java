@@ -1,15 +1,7 @@
 package com.greatnowhere.neural;
 
-import java.awt.Graphics2D;
-import java.awt.image.BufferedImage;
-import java.io.File;
 import java.io.IOException;
-import java.nio.file.DirectoryStream;
-import java.nio.file.FileSystems;
-import java.nio.file.Files;
-import java.nio.file.Path;
-
-import javax.imageio.ImageIO;
+import java.nio.file.Paths;
 
 /**
  * Main runnable class
@@ -24,6 +16,7 @@ public class Main {
 	final static int HEIGHT = 50;
 	final static int HIDDEN = 600;
 	final static String networkPersistencePath = "src/test/resources/network.file";
+	final static String featureCachePath = "src/test/resources/features.cache";
 	
 	public static void main(String[] args) throws InterruptedException, IOException {
 		try {
@@ -33,63 +26,34 @@ public class Main {
 			t.init(3 * WIDTH * HEIGHT, 1, HIDDEN, 2D, 0.4D);
 		}
 
-		processImages("src/test/resources/vehicles", 1D);
-		processImages("src/test/resources/background", 0D);
+		FeatureCache cache = FeatureCache.open(Paths.get(featureCachePath), WIDTH, HEIGHT);
+		processImages("src/test/resources/vehicles", 1D, cache);
+		processImages("src/test/resources/background", 0D, cache);
+		System.out.println(cache.getHits() + " images cached, " + cache.getMisses() + " decoded");
+		cache.save();
+		t.addListener(new LogListener(System.out));
 		do {
 			t.train(networkPersistencePath);
-			System.out.println();
-			System.out.println("Network max error = " + t.n.maxError);
 		} while ( t.n.maxError > 0.05D);
+		t.n.flushCheckpoint();
 		
 	}
 
-	/**
-	 * Adds specified image and its associated target value to training set
-	 * Image is first resized, then flat array of image's RGB values is constructed
-	 * @param img
-	 * @param targetValue
-	 * @param label
-	 */
-	static void processImage(BufferedImage img, double targetValue,String label) {
-		BufferedImage resizedImg = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_3BYTE_BGR);
-		Graphics2D g = resizedImg.createGraphics();
-		g.drawImage(img, 0, 0, WIDTH, HEIGHT, null);
-		g.dispose();
-		double[] pixels = new double[3 * WIDTH * HEIGHT];
-		int idx = 0;
-		for (int x=0;x<WIDTH;x++) {
-			for (int y=0;y<HEIGHT;y++) {
-				pixels[idx++] = ( img.getRGB(x, y) & 0xff ) / 255D;
-				pixels[idx++] = (( img.getRGB(x, y) >> 8 ) & 0xff) / 255D;
-				pixels[idx++] = (img.getRGB(x, y) >> 16) / 255D;
-			}
-		}
-		t.addTrainingSet(pixels, targetValue, label);
-	}
-	
 	/**
 	 * Adds images from specified path to training set
 	 * @param path
 	 * @param targetValue
+	 * @param cache
 	 */
-	static void processImages(String path, double targetValue) {
-		Path imgpath = FileSystems.getDefault().getPath(path);
-		try (
-				DirectoryStream<Path> imgdir = Files.newDirectoryStream(imgpath);
-		) {
-			for(Path file : imgdir ) {
-				File f = file.toFile();
-				if ( f.isFile() && f.canRead() ) {
-					BufferedImage img = ImageIO.read(f);
-					processImage(img, targetValue, f.getName());
-					System.out.println("added image " + f.getName());
-				}
-			}
+	static void processImages(String path, double targetValue, FeatureCache cache) {
+		ImageLoader loader = new ImageLoader(WIDTH, HEIGHT);
+		loader.setCache(cache);
+		try {
+			int count = loader.addTo(Paths.get(path), targetValue, t);
+			System.out.println("added " + count + " images from " + path);
 		} catch (Exception ex) {
 			System.out.println(ex.getLocalizedMessage());
 		}
-		
 	}
 
-	
 }
@@ -0,0 +1,31 @@
+package com.greatnowhere.neural;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Keeps statistics of all epochs in memory. Networks they refer to are kept reachable as well
+ * @author pzeltins
+ *
+ */
+public class MemoryListener implements TrainingListener {
+
+	List<EpochStats> epochs = new ArrayList<>();
+
+	@Override
+	public synchronized void epochFinished(EpochStats stats) {
+		epochs.add(stats);
+	}
+
+	/**
+	 * @return copy of statistics received so far, oldest first
+	 */
+	public synchronized List<EpochStats> getEpochs() {
+		return new ArrayList<>(epochs);
+	}
+
+	public synchronized void clear() {
+		epochs.clear();
+	}
+
+}
@@ -0,0 +1,65 @@
+package com.greatnowhere.neural;
+
+/**
+ * Gradient descent with momentum, each change being learningRate * gradient plus momentum times the previous change.
+ * Same updates as Neuron.TRAINING_ALG_BACKPROP in stochastic mode
+ * @author pzeltins
+ *
+ */
+public class MomentumOptimizer implements Optimizer {
+
+	double momentum;
+	/**
+	 * previous change of each weight
+	 */
+	double[] velocity;
+	float[] floatVelocity;
+
+	/**
+	 * @param momentum 0...1, 0 for plain gradient descent
+	 */
+	public MomentumOptimizer(double momentum) {
+		this.momentum = momentum;
+	}
+
+	@Override
+	public Optimizer create(int weights, int precision) {
+		MomentumOptimizer o = new MomentumOptimizer(momentum);
+		if ( precision == Layer.PRECISION_FLOAT )
+			o.floatVelocity = new float[weights];
+		else
+			o.velocity = new double[weights];
+		return o;
+	}
+
+	@Override
+	public void next() {
+	}
+
+	@Override
+	public void step(double[] weights, int from, double[] gradients, int g0, int n, double learningRate) {
+		double[] v = velocity;
+		double mu = momentum;
+		for (int i=0; i<n; i++) {
+			int w = from + i;
+			double d = learningRate * gradients[g0 + i] + mu * v[w];
+			v[w] = d;
+			weights[w] += d;
+			gradients[g0 + i] = 0D;
+		}
+	}
+
+	@Override
+	public void step(float[] weights, int from, float[] gradients, int g0, int n, double learningRate) {
+		float[] v = floatVelocity;
+		double mu = momentum;
+		for (int i=0; i<n; i++) {
+			int w = from + i;
+			double d = learningRate * gradients[g0 + i] + mu * v[w];
+			v[w] = FloatLayer.narrow(d);
+			weights[w] += d;
+			gradients[g0 + i] = 0F;
+		}
+	}
+
+}
@@ -0,0 +1,66 @@
+package com.greatnowhere.neural;
+
+/**
+ * Nesterov accelerated gradient. Momentum change is taken first and gradient is applied at
+ * the point it leads to, which with gradients of the current point amounts to
+ * v = momentum * v + learningRate * gradient, weight += momentum * v + learningRate * gradient.
+ * Overshoots less than plain momentum at high momentum values
+ * @author pzeltins
+ *
+ */
+public class NesterovOptimizer implements Optimizer {
+
+	double momentum;
+	double[] velocity;
+	float[] floatVelocity;
+
+	/**
+	 * @param momentum 0...1, typically 0.9
+	 */
+	public NesterovOptimizer(double momentum) {
+		this.momentum = momentum;
+	}
+
+	@Override
+	public Optimizer create(int weights, int precision) {
+		NesterovOptimizer o = new NesterovOptimizer(momentum);
+		if ( precision == Layer.PRECISION_FLOAT )
+			o.floatVelocity = new float[weights];
+		else
+			o.velocity = new double[weights];
+		return o;
+	}
+
+	@Override
+	public void next() {
+	}
+
+	@Override
+	public void step(double[] weights, int from, double[] gradients, int g0, int n, double learningRate) {
+		double[] v = velocity;
+		double mu = momentum;
+		for (int i=0; i<n; i++) {
+			int w = from + i;
+			double g = learningRate * gradients[g0 + i];
+			double d = g + mu * v[w];
+			v[w] = d;
+			weights[w] += mu * d + g;
+			gradients[g0 + i] = 0D;
+		}
+	}
+
+	@Override
+	public void step(float[] weights, int from, float[] gradients, int g0, int n, double learningRate) {
+		float[] v = floatVelocity;
+		double mu = momentum;
+		for (int i=0; i<n; i++) {
+			int w = from + i;
+			double g = learningRate * gradients[g0 + i];
+			double d = g + mu * v[w];
+			v[w] = FloatLayer.narrow(d);
+			weights[w] += mu * d + g;
+			gradients[g0 + i] = 0F;
+		}
+	}
+
+}
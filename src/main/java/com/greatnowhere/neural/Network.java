@@ -9,13 +9,13 @@ import java.io.Serializable;
 import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
-import java.util.concurrent.CountDownLatch;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 /**
  * Class representing 3-layer NN  
@@ -29,6 +29,15 @@ public class Network implements Serializable, Comparable<Network> {
 	 */
 	private static final long serialVersionUID = 1L;
 	
+	/**
+	 * Max number of samples computed together by computeBatch
+	 */
+	public static final int BATCH_SIZE = 64;
+	/**
+	 * Min number of weights computed by a single task, smaller layers are computed on the caller thread
+	 */
+	static final int MIN_TASK_WEIGHTS = 16384;
+	
 	int inputLayerSize; // number of inputs
 	int outputLayerSize; // number of outputs
 	int hiddenLayerSize;
@@ -38,6 +47,14 @@ public class Network implements Serializable, Comparable<Network> {
 	
 	private int trainingMethod = Neuron.TRAINING_MODE_STOCHASTIC; 
 	private int trainingAlgorithm = Neuron.TRAINING_ALG_BACKPROP;
+	/**
+	 * Implementation of activation functions, see Layer.ACTIVATION_MODE_*
+	 */
+	private int activationMode = Layer.ACTIVATION_MODE_EXACT;
+	/**
+	 * Number of threads training samples in parallel, see Utils.train
+	 */
+	private int trainingThreads = 1;
 	
 	public double error=0D;
 	public double minError = Double.MAX_VALUE, stdError = 0D, totalError = 0D, maxError = 0D, squareError = 0D;
@@ -52,10 +69,56 @@ public class Network implements Serializable, Comparable<Network> {
 	/**
 	 * The following properties are transient so whole NN can be serialized without taking up too much space
 	 */
-	transient ExecutorService executor;
-	transient InputValue[] inputValues;
-	transient ArrayList<HiddenNeuron> hidden;
-	transient ArrayList<OutputNeuron> output;
+	transient ForkJoinPool pool;
+	transient RangeTask[] tasks;
+	transient Layer hidden;
+	transient Layer output;
+	/**
+	 * Unit arrays, indexed by input values followed by hidden and output neurons
+	 */
+	transient double[] units;
+	transient double[] derivatives;
+	transient double[] gradients;
+	transient double[] errors;
+	/**
+	 * Expected outputs of the sample being trained, one per output neuron
+	 */
+	transient double[] targets;
+	/**
+	 * Scratch arrays for batch computing
+	 */
+	transient double[] batchUnits;
+	transient double[] batchSums;
+	/**
+	 * Listeners notified after each epoch, null if none. Replaced as a whole when changed
+	 */
+	transient volatile TrainingListener[] listeners;
+	/**
+	 * Number of epochs trained since this network was created or loaded
+	 */
+	transient int epochs;
+	/**
+	 * Per-sample timing of current epoch, collected only while someone is listening
+	 */
+	transient LatencyHistogram latencies;
+	transient long forwardNanos, backwardNanos;
+	/**
+	 * Writes checkpoints of this network while training, see Utils.train
+	 */
+	transient Checkpointer checkpointer;
+	/**
+	 * Checkpoint interval, every epoch if both are 0
+	 */
+	transient int checkpointEpochs;
+	transient long checkpointMillis;
+	/**
+	 * Chooses samples of each epoch, UniformSampler if not set
+	 */
+	transient Sampler sampler;
+	/**
+	 * Optimizer layers get their instances of, null if training algorithm is used
+	 */
+	transient Optimizer optimizer;
 	
 	public Network() {
 		
@@ -67,53 +130,96 @@ public class Network implements Serializable, Comparable<Network> {
 	 * @param source
 	 */
 	public Network(Network source) {
+		this(source.shareConnections(), ( source.sampler != null ? source.sampler.copy() : null ));
+	}
+	
+	/**
+	 * Create new network with the same dimensions and parameters as source, reading source only,
+	 * so that several threads can copy the same network at once. Connections are shared only if
+	 * shareConnections was called before
+	 * @param source
+	 * @param sampler sampler of new network, copied from source's sampler beforehand, or null for default
+	 */
+	Network(Network source, Sampler sampler) {
 		this();
 		inputLayerSize = source.inputLayerSize;
 		outputLayerSize = source.outputLayerSize;
 		hiddenLayerSize = source.hiddenLayerSize;
-		this.hidden = new ArrayList<HiddenNeuron>();
-		this.output = new ArrayList<OutputNeuron>();
-		executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors()+1);
-		
-		// input layer
-		inputValues = new InputValue[inputLayerSize];
-		for (int i=0; i<inputLayerSize; i++) {
-			inputValues[i] = new InputValue();
-		}
-		// hidden layer
-		for (int i=0;i<hiddenLayerSize;i++) {
-			HiddenNeuron n = new HiddenNeuron(trainingMethod,trainingAlgorithm);
-			this.hidden.add(n);
-		}
-		for (int i=0;i<outputLayerSize;i++) {
-			OutputNeuron n = new OutputNeuron(trainingMethod,trainingAlgorithm);
-			this.output.add(n);
-		}
+		pool = source.pool;
 		// duplicate connections (but not weights)
-		List<InputValue> sourceNetInputs = Arrays.asList(source.inputValues);
-		for (int i=0;i<hiddenLayerSize;i++) {
-			HiddenNeuron n = hidden.get(i);
-			for (Connection c : source.hidden.get(i).inputConnections ) {
-				if ( c.source instanceof InputValue ) {
-					int inputIdx = sourceNetInputs.indexOf(c.source);
-					if ( inputIdx > -1 ) {
-						n.connectInput(inputValues[inputIdx], null);
-					}
-				} else {
-					int inputIdx = source.hidden.indexOf(c.source);
-					n.connectInput(hidden.get(inputIdx), null);
-				}
-			}
-			for (Connection c : source.hidden.get(i).outputConnections ) {
-				int inputIdx = sourceNetInputs.indexOf(c.source);
-				if ( inputIdx > -1 ) {
-					n.connectInput(inputValues[inputIdx], null);
-				}
-			}
-				
-		}
+		hidden = source.hidden.copyStructure();
+		output = source.output.copyStructure();
+		allocateUnits();
 		setTrainingAlgorithm(source.getTrainingAlgorithm());
 		setTrainingMethod(source.getTrainingMethod());
+		setActivationMode(source.getActivationMode());
+		setTrainingThreads(source.getTrainingThreads());
+		listeners = source.listeners;
+		this.sampler = sampler;
+		setOptimizer(source.optimizer);
+	}
+	
+	/**
+	 * Lets copies made from now on share connection masks of this network, see Layer.shareMask
+	 * @return this network
+	 */
+	Network shareConnections() {
+		hidden.shareMask();
+		output.shareMask();
+		return this;
+	}
+	
+	/**
+	 * Creates a network sharing weights with this one, having its own unit arrays and error statistics.
+	 * Used by parallel training, each worker thread training its own share of samples on the caller thread
+	 * @param accumulators whether worker should have its own batch accumulators
+	 * @return
+	 */
+	Network worker(boolean accumulators) {
+		Network w = new Network();
+		w.inputLayerSize = inputLayerSize;
+		w.outputLayerSize = outputLayerSize;
+		w.hiddenLayerSize = hiddenLayerSize;
+		w.trainingMethod = trainingMethod;
+		w.trainingAlgorithm = trainingAlgorithm;
+		w.activationMode = activationMode;
+		w.hidden = hidden.view(accumulators);
+		w.output = output.view(accumulators);
+		w.allocateUnits();
+		w.minError = Double.MAX_VALUE;
+		w.sampler = sampler;
+		if ( latencies != null )
+			w.latencies = new LatencyHistogram();
+		return w;
+	}
+	
+	/**
+	 * Adds batch accumulators and error statistics of a worker to this network
+	 * @param w
+	 */
+	void accumulate(Network w) {
+		hidden.accumulate(w.hidden);
+		output.accumulate(w.output);
+		accumulateStats(w);
+	}
+	
+	/**
+	 * Adds error statistics of a worker to this network
+	 * @param w
+	 */
+	void accumulateStats(Network w) {
+		currentIterations += w.currentIterations;
+		right += w.right;
+		wrong += w.wrong;
+		minError = Math.min(minError, w.minError);
+		maxError = Math.max(maxError, w.maxError);
+		totalError += w.totalError;
+		squareError += w.squareError;
+		if ( latencies != null ) {
+			latencies.add(w.latencies);
+			forwardNanos += w.forwardNanos;
+			backwardNanos += w.backwardNanos;
+		}
 	}
 	
 	/**
@@ -123,40 +229,91 @@ public class Network implements Serializable, Comparable<Network> {
 	 * @param hidden
 	 */
 	public void init(int inputs,int outputs,int hidden) {
+		init(inputs, outputs, hidden, Layer.PRECISION_DOUBLE);
+	}
+	
+	/**
+	 * Initializes NN to the specified dimensions
+	 * @param inputs
+	 * @param outputs
+	 * @param hidden
+	 * @param precision Layer.PRECISION_DOUBLE or Layer.PRECISION_FLOAT
+	 */
+	public void init(int inputs,int outputs,int hidden,int precision) {
 		inputLayerSize = inputs;
 		outputLayerSize = outputs;
 		hiddenLayerSize = hidden;
-		this.hidden = new ArrayList<HiddenNeuron>();
-		this.output = new ArrayList<OutputNeuron>();
-		// by default network will be calculated by an executor having cores+1 threads
-		executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors()+1);
-		
-		// input layer
-		inputValues = new InputValue[inputs];
-		for (int i=0; i<inputs; i++) {
-			inputValues[i] = new InputValue();
-		}
-		
-		// hidden layer
-		for (int i=0;i<hiddenLayerSize;i++) {
-			HiddenNeuron n = new HiddenNeuron(trainingMethod,trainingAlgorithm);
-			// connect every hidden layer neuron to every input layer neuron
-			for (int j=0; j<inputs; j++) {
-				n.connectInput(inputValues[j], null);
-			}
-			this.hidden.add(n);
-		}
-
+		// by default network will be calculated by common fork/join pool together with the caller thread
+		pool = ForkJoinPool.commonPool();
 		
-		// output layer
-		for (int i=0;i<outputLayerSize;i++) {
-			OutputNeuron n = new OutputNeuron(trainingMethod,trainingAlgorithm);
-			// connect every hidden layer neuron to every output layer neuron
-			for (Neuron nInp : this.hidden ) {
-				n.connectInput(nInp, null);
-			}
-			this.output.add(n);
-		}
+		// connect every hidden layer neuron to every input
+		boolean single = ( precision == Layer.PRECISION_FLOAT );
+		this.hidden = ( single ? new FloatLayer(hidden, inputs, 0, inputs, Layer.ACTIVATION_TANH) : 
+			new Layer(hidden, inputs, 0, inputs, Layer.ACTIVATION_TANH) );
+		// connect every output layer neuron to every hidden layer neuron
+		this.output = ( single ? new FloatLayer(outputs, inputs + hidden, inputs, hidden, Layer.ACTIVATION_SIGMOID) :
+			new Layer(outputs, inputs + hidden, inputs, hidden, Layer.ACTIVATION_SIGMOID) );
+		Arrays.fill(this.output.depth, Neuron.LAYER_OUTPUT);
+		allocateUnits();
+		setTrainingAlgorithm(trainingAlgorithm);
+		setTrainingMethod(trainingMethod);
+		// networks serialized before activation modes existed have no mode
+		setActivationMode(activationMode != 0 ? activationMode : Layer.ACTIVATION_MODE_EXACT);
+	}
+	
+	/**
+	 * Initializes NN with given layers, used when loading from file
+	 * @param hidden
+	 * @param output
+	 */
+	void init(Layer hidden, Layer output) {
+		pool = ForkJoinPool.commonPool();
+		this.hidden = hidden;
+		this.output = output;
+		relayout();
+		allocateUnits();
+	}
+	
+	private void allocateUnits() {
+		int n = inputLayerSize + hiddenLayerSize + outputLayerSize;
+		units = new double[n];
+		derivatives = new double[n];
+		gradients = new double[n];
+		errors = new double[n];
+		targets = new double[outputLayerSize];
+	}
+	
+	int inputUnit(int i) {
+		return i;
+	}
+	
+	int hiddenUnit(int j) {
+		return inputLayerSize + j;
+	}
+	
+	int outputUnit(int k) {
+		return inputLayerSize + hiddenLayerSize + k;
+	}
+	
+	/**
+	 * Connects two units of this network
+	 * @param sourceUnit input value or hidden neuron
+	 * @param destUnit hidden or output neuron
+	 * @return true if connected, false if connection already exists
+	 */
+	boolean connect(int sourceUnit, int destUnit) {
+		Layer l = ( destUnit >= output.firstUnit ? output : hidden );
+		boolean connected = l.connect(destUnit - l.firstUnit, sourceUnit);
+		relayout();
+		return connected;
+	}
+	
+	/**
+	 * Switches layers between dense and sparse rows as their fill ratio changes, see Layer.withLayout
+	 */
+	void relayout() {
+		hidden = hidden.withLayout();
+		output = output.withLayout();
 	}
 	
 	/**
@@ -164,20 +321,22 @@ public class Network implements Serializable, Comparable<Network> {
 	 * so this NN can be efficiently serialized
 	 */
 	public void storeWeights() {
+		hiddenWeights = storeWeights(hidden);
+		outputWeights = storeWeights(output);
+	}
+	
+	private static List<Double> storeWeights(Layer l) {
 		ArrayList<Double> r = new ArrayList<>();
-		for (Neuron n : hidden ) {
-			for ( Connection c : n.inputConnections ) {
-				r.add(c.destWeight);
-			}
-		}
-		hiddenWeights = r;
-		r = new ArrayList<>();
-		for (Neuron n : output ) {
-			for ( Connection c : n.inputConnections ) {
-				r.add(c.destWeight);
+		for (int j=0; j<l.size; j++) {
+			int row = j * l.stride;
+			// bias weight goes first
+			r.add(l.getWeight(row + l.fanIn));
+			for (int i=0; i<l.fanIn; i++) {
+				if ( l.isConnected(j, l.srcFrom + i) )
+					r.add(l.getWeight(row + i));
 			}
 		}
-		outputWeights = r;
+		return r;
 	}
 	
 	/**
@@ -185,16 +344,18 @@ public class Network implements Serializable, Comparable<Network> {
 	 * Used after deserializing
 	 */
 	public void restoreWeights() {
-		int i=0;
-		for (Neuron n : hidden ) {
-			for ( Connection c : n.inputConnections ) {
-				c.destWeight = hiddenWeights.get(i++);
-			}
-		}
-		i=0;
-		for (Neuron n : output ) {
-			for ( Connection c : n.inputConnections ) {
-				c.destWeight = outputWeights.get(i++);
+		restoreWeights(hidden, hiddenWeights);
+		restoreWeights(output, outputWeights);
+	}
+	
+	private static void restoreWeights(Layer l, List<Double> weights) {
+		int idx = 0;
+		for (int j=0; j<l.size; j++) {
+			int row = j * l.stride;
+			l.setWeight(row + l.fanIn, weights.get(idx++));
+			for (int i=0; i<l.fanIn; i++) {
+				if ( l.isConnected(j, l.srcFrom + i) )
+					l.setWeight(row + i, weights.get(idx++));
 			}
 		}
 	}
@@ -205,26 +366,31 @@ public class Network implements Serializable, Comparable<Network> {
 	 */
 	public void addHiddenNeuron(int count) {
 		for (int i=0;i<count;i++) {
-			HiddenNeuron n = new HiddenNeuron(trainingMethod,trainingAlgorithm);
-			// connect every hidden layer neuron to every input layer neuron
-			for (int j=0; j<this.inputLayerSize; j++) {
-				n.connectInput(inputValues[j], null);
-			}
-			// connect to output layer
-			for (int j=0; j<this.outputLayerSize; j++) {
-				Neuron o = this.output.get(j);
-				o.connectInput(n, null);
-			}
-			this.hidden.add(n);
+			// connect every hidden layer neuron to every input layer neuron, and to output layer
+			addHiddenNeuron(true);
 		}
-		this.hiddenLayerSize += count;
 	}
 	
-	public HiddenNeuron addHiddenNeuron() {
-		HiddenNeuron n = new HiddenNeuron(trainingMethod,trainingAlgorithm);
-		this.hidden.add(n);
+	/**
+	 * Adds a hidden neuron connected to bias only
+	 * @return index of new neuron
+	 */
+	public int addHiddenNeuron() {
+		return addHiddenNeuron(false);
+	}
+	
+	private int addHiddenNeuron(boolean connected) {
+		int hiddenEnd = hiddenUnit(hiddenLayerSize);
+		// layers reading hidden neurons get a new source column
+		if ( hidden.srcFrom + hidden.fanIn == hiddenEnd )
+			hidden.addSource(false);
+		int j = hidden.addNeuron(0, ( connected ? inputLayerSize : 0 ));
+		output.addSource(connected);
+		output.firstUnit++;
 		this.hiddenLayerSize ++;
-		return n;
+		allocateUnits();
+		relayout();
+		return j;
 	}
 	
 	/**
@@ -245,12 +411,50 @@ public class Network implements Serializable, Comparable<Network> {
 	}
 	
 	/**
-	 * Serializes and writes NN to file
+	 * Writes NN to file in binary format, see NetworkFormat
 	 * @param filepath
 	 * @throws IOException
 	 */
 	public void persistToFile(String filepath) throws IOException {
-		Files.write(Paths.get(filepath), serialize().getBytes(StandardCharsets.UTF_8));
+		NetworkFormat.write(this, Paths.get(filepath));
+	}
+	
+	/**
+	 * Sets how often training persists this network to its persistence file. Checkpoints are written
+	 * in background, see Checkpointer
+	 * @param epochs checkpoint after this many epochs, 0 to use time only
+	 * @param millis checkpoint once this much time has passed since the last one, 0 to use epochs only
+	 */
+	public void setCheckpointInterval(int epochs, long millis) {
+		checkpointEpochs = epochs;
+		checkpointMillis = millis;
+		if ( checkpointer != null )
+			checkpointer.setInterval(epochs, millis);
+	}
+	
+	/**
+	 * Waits for checkpoint being written, and writes current weights if they have been trained since
+	 * the last checkpoint
+	 * @throws IOException
+	 */
+	public void flushCheckpoint() throws IOException {
+		if ( checkpointer != null )
+			checkpointer.flush(this);
+	}
+	
+	/**
+	 * @return checkpointer writing to path, replacing one writing elsewhere
+	 */
+	Checkpointer checkpointer(String path) throws IOException {
+		Path p = Paths.get(path);
+		if ( checkpointer == null || !checkpointer.getPath().equals(p) ) {
+			if ( checkpointer != null )
+				checkpointer.await();
+			checkpointer = new Checkpointer(p);
+			if ( checkpointEpochs > 0 || checkpointMillis > 0 )
+				checkpointer.setInterval(checkpointEpochs, checkpointMillis);
+		}
+		return checkpointer;
 	}
 	
 	/**
@@ -274,42 +478,168 @@ public class Network implements Serializable, Comparable<Network> {
 	}
 	
 	/**
-	 * Deserializes NN from file
+	 * Reads NN from file, either in binary format or serialized by serialize()
 	 * @param filePath
 	 * @return
 	 * @throws IOException
 	 */
 	public static Network fromPath(String filePath) throws IOException {
-		byte[] encoded = Files.readAllBytes(Paths.get(filePath));
-		Network n = fromString(StandardCharsets.UTF_8.decode(ByteBuffer.wrap(encoded)).toString());
-		n.executor = Executors.newFixedThreadPool(20);
-		return n;
+		Path path = Paths.get(filePath);
+		if ( NetworkFormat.isBinary(path) )
+			return NetworkFormat.read(path);
+		byte[] encoded = Files.readAllBytes(path);
+		return fromString(StandardCharsets.UTF_8.decode(ByteBuffer.wrap(encoded)).toString());
 	}
 	
 	public void setInputValues(double[] v) {
-		for (int i=0; i<inputLayerSize; i++) {
-			inputValues[i].value = v[i];
-		}
+		System.arraycopy(v, 0, units, 0, inputLayerSize);
 	}
 	
 	/**
-	 * Computes NN using multiple-threaded executor
+	 * Computes NN, splitting large layers into neuron ranges computed in parallel.
+	 * Hidden neurons reading other hidden neurons are computed wavefront by wavefront, see Layer.schedule
 	 * @throws InterruptedException
 	 */
 	public void compute() throws InterruptedException {
-		// forward pass computing, establish a latch that will allow us to wait until whole hidden layer is computed
-		CountDownLatch latch;
-		latch = new CountDownLatch(this.hiddenLayerSize);
-		for (Neuron n : this.hidden ) {
-			n.computeAsync(latch, this.executor);
+		forward();
+	}
+	
+	void forward() {
+		// forward pass computing, hidden layer first
+		computeLayer(hidden);
+		computeLayer(output);
+	}
+	
+	private void computeLayer(Layer l) {
+		if ( !l.readsSelf() ) {
+			computeRange(l, 0, l.size, false);
+			return;
+		}
+		// a wavefront reads only earlier ones, so the only barriers needed are between wavefronts
+		l.schedule();
+		for (int w=0; w+1<l.waves.length; w++) {
+			computeRange(l, l.waves[w], l.waves[w + 1], true);
+		}
+	}
+	
+	/**
+	 * Computes neurons from (inclusive) to (exclusive) on the caller thread, with pool workers taking 
+	 * contiguous parts of the range if it is large enough
+	 * @param l
+	 * @param scheduled whether range indexes wavefront order of neurons rather than neurons themselves
+	 */
+	private void computeRange(Layer l, int from, int to, boolean scheduled) {
+		int n = to - from;
+		int parts = ( pool == null ? 1 : 
+			(int) Math.min(Math.min(pool.getParallelism() + 1, n), (long) n * l.stride / MIN_TASK_WEIGHTS) );
+		if ( parts <= 1 ) {
+			computeRange(l, from, to, scheduled, units, derivatives);
+			return;
+		}
+		if ( tasks == null || tasks.length < parts ) {
+			tasks = new RangeTask[parts];
+			for (int p=0; p<parts; p++) {
+				tasks[p] = new RangeTask();
+			}
+		}
+		for (int p=1; p<parts; p++) {
+			RangeTask t = tasks[p];
+			t.reinitialize();
+			t.layer = l;
+			t.from = from + n * p / parts;
+			t.to = from + n * (p + 1) / parts;
+			t.scheduled = scheduled;
+			pool.execute(t);
+		}
+		computeRange(l, from, from + n / parts, scheduled, units, derivatives);
+		for (int p=1; p<parts; p++) {
+			tasks[p].join();
+		}
+	}
+	
+	private static void computeRange(Layer l, int from, int to, boolean scheduled, double[] units, double[] derivatives) {
+		if ( scheduled )
+			l.computeScheduled(units, derivatives, from, to);
+		else
+			l.compute(units, derivatives, from, to);
+	}
+	
+	/**
+	 * Computes a range of neurons of a layer
+	 */
+	class RangeTask extends RecursiveAction {
+		
+		private static final long serialVersionUID = 1L;
+		
+		Layer layer;
+		int from, to;
+		boolean scheduled;
+
+		@Override
+		protected void compute() {
+			computeRange(layer, from, to, scheduled, units, derivatives);
+		}
+		
+	}
+	
+	/**
+	 * Computes NN for a number of samples at once. Can be used for scoring, 
+	 * leaves unit values used by learn() intact
+	 * @param in input values, one array per sample
+	 * @param out output values, one array per sample
+	 */
+	public void computeBatch(double[][] in, double[][] out) {
+		int unitCount = units.length;
+		for (int s0=0; s0<in.length; s0+=BATCH_SIZE) {
+			int count = Math.min(BATCH_SIZE, in.length - s0);
+			prepareBatch();
+			for (int s=0; s<count; s++) {
+				System.arraycopy(in[s0 + s], 0, batchUnits, s * unitCount, inputLayerSize);
+			}
+			hidden.computeBatch(batchUnits, unitCount, count, batchSums);
+			output.computeBatch(batchUnits, unitCount, count, batchSums);
+			for (int s=0; s<count; s++) {
+				System.arraycopy(batchUnits, s * unitCount + output.firstUnit, out[s0 + s], 0, outputLayerSize);
+			}
+		}
+	}
+	
+	/**
+	 * Computes NN for a number of samples at once
+	 * @param in input values of all samples, one after another
+	 * @param out output values of all samples, one after another
+	 */
+	public void computeBatch(double[] in, double[] out) {
+		int unitCount = units.length;
+		int samples = in.length / inputLayerSize;
+		for (int s0=0; s0<samples; s0+=BATCH_SIZE) {
+			int count = Math.min(BATCH_SIZE, samples - s0);
+			prepareBatch();
+			for (int s=0; s<count; s++) {
+				System.arraycopy(in, (s0 + s) * inputLayerSize, batchUnits, s * unitCount, inputLayerSize);
+			}
+			hidden.computeBatch(batchUnits, unitCount, count, batchSums);
+			output.computeBatch(batchUnits, unitCount, count, batchSums);
+			for (int s=0; s<count; s++) {
+				System.arraycopy(batchUnits, s * unitCount + output.firstUnit, out, (s0 + s) * outputLayerSize, outputLayerSize);
+			}
 		}
-		latch.await();
-		// latch for output layer
-		latch = new CountDownLatch(this.outputLayerSize);
-		for (Neuron n : this.output ) {
-			n.computeAsync(latch, this.executor);
+	}
+	
+	private void prepareBatch() {
+		if ( batchUnits == null || batchUnits.length != BATCH_SIZE * units.length ) {
+			batchUnits = new double[BATCH_SIZE * units.length];
+			batchSums = new double[BATCH_SIZE * Layer.BATCH_ROWS];
 		}
-		latch.await();
+	}
+	
+	/**
+	 * Creates a view of this network for computing outputs from multiple threads at once. 
+	 * Predictor is meant to be created once and shared by all threads
+	 * @return
+	 */
+	public Predictor predictor() {
+		return new Predictor(this);
 	}
 	
 	/**
@@ -318,7 +648,7 @@ public class Network implements Serializable, Comparable<Network> {
 	 * @return
 	 */
 	public double getOutput(int n) {
-		return this.output.get(n).getOutput();
+		return units[output.firstUnit + n];
 	}
 	
 	public double getOutput() {
@@ -326,17 +656,71 @@ public class Network implements Serializable, Comparable<Network> {
 	}
 	
 	/**
-	 * Executes single backpropagatio pass
+	 * Executes single backpropagation pass through one output neuron, others are left as they are
 	 * @param outputIndex
 	 * @param target
 	 * @param learningRate
 	 * @param momentum
 	 */
 	public void learn(int outputIndex, double target, double learningRate, double momentum) {
-		// backpropagation pass
-		this.output.get(outputIndex).learn(target, learningRate, momentum);
-		for (Neuron n : this.hidden ) {
-			n.learn(learningRate, momentum);
+		Arrays.fill(gradients, output.firstUnit, output.firstUnit + output.size, 0D);
+		int u = output.firstUnit + outputIndex;
+		gradients[u] = ( target - units[u] ) * derivatives[u];
+		backward(outputIndex, outputIndex + 1, learningRate, momentum);
+	}
+	
+	/**
+	 * Executes single backpropagation pass through outputs 0...count-1 at once, so hidden neurons
+	 * are visited once however many outputs are trained
+	 * @param targets expected values of outputs
+	 * @param count number of outputs trained, the rest are left as they are
+	 * @param learningRate
+	 * @param momentum
+	 */
+	public void learn(double[] targets, int count, double learningRate, double momentum) {
+		Arrays.fill(gradients, output.firstUnit + count, output.firstUnit + output.size, 0D);
+		for (int j=0; j<count; j++) {
+			int u = output.firstUnit + j;
+			gradients[u] = ( targets[j] - units[u] ) * derivatives[u];
+		}
+		backward(0, count, learningRate, momentum);
+	}
+	
+	public void learn(double[] targets, double learningRate, double momentum) {
+		learn(targets, targets.length, learningRate, momentum);
+	}
+	
+	/**
+	 * Propagates output gradients to hidden neurons, then adjusts weights of outputs from...to-1 and of
+	 * all hidden neurons
+	 */
+	private void backward(int from, int to, double learningRate, double momentum) {
+		output.nextSample();
+		hidden.nextSample();
+		// hidden neuron error is the sum of gradients of neurons it outputs to, weighted by connection weight
+		// before the weights are adjusted
+		Arrays.fill(errors, 0D);
+		output.backpropagate(gradients, errors);
+		for (int j=from; j<to; j++) {
+			output.adjustWeights(j, gradients[output.firstUnit + j], units, learningRate, momentum);
+		}
+		if ( hidden.readsSelf() ) {
+			// reverse wavefront order, so that errors of a neuron are complete before its gradient is taken.
+			// only hidden sources need errors
+			int[] order = hidden.schedule();
+			for (int k=hidden.size-1; k>=0; k--) {
+				int j = order[k];
+				int u = hidden.firstUnit + j;
+				gradients[u] = errors[u] * derivatives[u];
+				hidden.backpropagate(j, gradients[u], errors, hidden.firstUnit);
+				hidden.adjustWeights(j, gradients[u], units, learningRate, momentum);
+			}
+			return;
+		}
+		for (int j=0; j<hidden.size; j++) {
+			int u = hidden.firstUnit + j;
+			gradients[u] = errors[u] * derivatives[u];
+			hidden.adjustWeights(j, gradients[u], units, learningRate, momentum);
 		}
 	}
 	
@@ -346,14 +730,10 @@ public class Network implements Serializable, Comparable<Network> {
 	 * @param momentum
 	 */
 	public void commitChanges(double learningRate, double momentum) {
-		for (Neuron n : this.output ) {
-			if ( n instanceof IBatchLearning )
-				((IBatchLearning) n).commitWeights(learningRate,momentum);
-		}
-		for (Neuron n : this.hidden ) {
-			if ( n instanceof IBatchLearning )
-				((IBatchLearning) n).commitWeights(learningRate,momentum);
-		}
+		output.batchError(totalError);
+		hidden.batchError(totalError);
+		output.commitWeights(units, learningRate, momentum);
+		hidden.commitWeights(units, learningRate, momentum);
 	}
 	
 	/**
@@ -361,35 +741,31 @@ public class Network implements Serializable, Comparable<Network> {
 	 * @param net
 	 */
 	public void merge(Network net) {
-		for (int i=0; i<this.hidden.size(); i++) {
-			Neuron n = this.hidden.get(i);
-			n.merge(net.hidden.get(i));
-		}
-		for (int i=0; i<this.output.size(); i++) {
-			Neuron n = this.output.get(i);
-			n.merge(net.output.get(i));
-		}
+		hidden.merge(net.hidden);
+		output.merge(net.output);
 	}
 	
 	public String toString() {
-		String s = "";
-		int i=0;
-		for ( Neuron n : this.hidden) {
-			s += "(" + ++i + ")";
-			for ( Connection c : n.inputConnections ) {
-				s += c.toString();
-			}
-		}
-		s += "\n";
-		i=0;
-		for ( Neuron n : this.output) {
-			s += "(" + ++i + ")";
-			for ( Connection c : n.inputConnections ) {
-				s += c.toString();
+		StringBuilder s = new StringBuilder();
+		toString(hidden, s);
+		toString(output, s);
+		return s.toString();
+	}
+	
+	private void toString(Layer l, StringBuilder s) {
+		for (int j=0; j<l.size; j++) {
+			int row = j * l.stride;
+			s.append("(").append(j + 1).append(")");
+			s.append(" ib").append(String.format("%.2f", l.getWeight(row + l.fanIn)));
+			for (int i=0; i<l.fanIn; i++) {
+				if ( l.isConnected(j, l.srcFrom + i) ) {
+					s.append(" ");
+					if ( l.srcFrom + i < inputLayerSize ) s.append("i");
+					s.append(String.format("%.2f", l.getWeight(row + i)));
+				}
 			}
 		}
-		s += "\n";
-		return s;
+		s.append("\n");
 	}
 
 	/**
@@ -407,12 +783,8 @@ public class Network implements Serializable, Comparable<Network> {
 	 */
 	public void setTrainingMethod(int trainingMethod) {
 		this.trainingMethod = trainingMethod;
-		for (Neuron n : hidden ) {
-			n.trainingMode = trainingMethod;
-		}
-		for (Neuron n : output ) {
-			n.trainingMode = trainingMethod;
-		}
+		hidden.trainingMode = trainingMethod;
+		output.trainingMode = trainingMethod;
 	}
 
 	/**
@@ -429,12 +801,122 @@ public class Network implements Serializable, Comparable<Network> {
 	 */
 	public void setTrainingAlgorithm(int trainingAlgorithm) {
 		this.trainingAlgorithm = trainingAlgorithm;
-		for (Neuron n : hidden ) {
-			n.trainingAlgorithm = trainingAlgorithm;
-		}
-		for (Neuron n : output ) {
-			n.trainingAlgorithm = trainingAlgorithm;
-		}
+		setOptimizer(optimizer);
+	}
+	
+	/**
+	 * @return whether weights are changed after each sample, rather than when batch is committed
+	 */
+	boolean changesPerSample() {
+		return ( trainingMethod == Neuron.TRAINING_MODE_STOCHASTIC && ( output.optimizer == null || output.stepsPerSample() ) );
+	}
+	
+	/**
+	 * @return Layer.PRECISION_DOUBLE or Layer.PRECISION_FLOAT
+	 */
+	public int getPrecision() {
+		return hidden.getPrecision();
+	}
+	
+	/**
+	 * Converts weights to specified precision. Training state such as momentum is reset
+	 * @param precision Layer.PRECISION_DOUBLE or Layer.PRECISION_FLOAT
+	 */
+	public void setPrecision(int precision) {
+		hidden = hidden.withPrecision(precision);
+		output = output.withPrecision(precision);
+		relayout();
+		setOptimizer(optimizer);
+	}
+	
+	/**
+	 * @return Layer.ACTIVATION_MODE_EXACT, ACTIVATION_MODE_TABLE or ACTIVATION_MODE_RATIONAL
+	 */
+	public int getActivationMode() {
+		return activationMode;
+	}
+	
+	/**
+	 * Selects implementation of activation functions for all neurons. Approximations are faster than
+	 * Math.tanh and Math.exp, see Activation for their errors
+	 * @param activationMode Layer.ACTIVATION_MODE_EXACT, ACTIVATION_MODE_TABLE or ACTIVATION_MODE_RATIONAL
+	 */
+	public void setActivationMode(int activationMode) {
+		this.activationMode = activationMode;
+		hidden.activationMode = activationMode;
+		output.activationMode = activationMode;
+	}
+	
+	public int getTrainingThreads() {
+		return trainingThreads;
+	}
+
+	/**
+	 * Sets number of threads used for training. In batch modes samples are split between threads,
+	 * each accumulating its own weight changes which are summed before committing. In stochastic mode
+	 * threads take samples one by one and update shared weights without locking (Hogwild)
+	 * @param trainingThreads
+	 */
+	public void setTrainingThreads(int trainingThreads) {
+		this.trainingThreads = Math.max(1, trainingThreads);
+	}
+	
+	/**
+	 * Adds listener notified after each training epoch of this network. Networks copied from this one,
+	 * such as herd specimens, notify the same listeners. Timing is only measured while there are listeners
+	 * @param l
+	 */
+	public synchronized void addTrainingListener(TrainingListener l) {
+		TrainingListener[] current = ( listeners != null ? listeners : new TrainingListener[0] );
+		TrainingListener[] updated = Arrays.copyOf(current, current.length + 1);
+		updated[current.length] = l;
+		listeners = updated;
+	}
+	
+	public synchronized void removeTrainingListener(TrainingListener l) {
+		if ( listeners == null )
+			return;
+		ArrayList<TrainingListener> updated = new ArrayList<>(Arrays.asList(listeners));
+		updated.remove(l);
+		listeners = ( updated.isEmpty() ? null : updated.toArray(new TrainingListener[updated.size()]) );
+	}
+	
+	/**
+	 * Sets optimizer computing weight changes instead of training algorithm, TRAINING_ALG_RPROP
+	 * being iRPROP+ (RpropOptimizer) and TRAINING_ALG_BACKPROP momentum backpropagation. Each layer gets
+	 * an instance of its own, state of which is reset when precision or topology changes and is not persisted.
+	 * Momentum passed to training is not used by optimizers, learning rate is
+	 * @param optimizer MomentumOptimizer, NesterovOptimizer, RmspropOptimizer, AdamOptimizer, RpropOptimizer 
+	 * or null for training algorithm
+	 */
+	public void setOptimizer(Optimizer optimizer) {
+		this.optimizer = optimizer;
+		Optimizer o = ( optimizer == null && trainingAlgorithm == Neuron.TRAINING_ALG_RPROP ? new RpropOptimizer() : optimizer );
+		hidden.setOptimizer(o);
+		output.setOptimizer(o);
+	}
+	
+	public Optimizer getOptimizer() {
+		return optimizer;
+	}
+	
+	/**
+	 * Sets sampler choosing samples each epoch visits and their order. Networks copied from this one,
+	 * such as herd specimens, get samplers of their own with the same settings
+	 * @param sampler UniformSampler, StratifiedSampler, PrioritizedSampler, or null for default
+	 */
+	public void setSampler(Sampler sampler) {
+		this.sampler = sampler;
+	}
+	
+	public Sampler getSampler() {
+		return sampler();
+	}
+	
+	Sampler sampler() {
+		if ( sampler == null )
+			sampler = new UniformSampler();
+		return sampler;
 	}
 	
 	public String getStats() {
@@ -0,0 +1,358 @@
+package com.greatnowhere.neural;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Binary network file format. All values are little-endian:
+ * <pre>
+ * int    magic "NNET", version
+ * int    inputs, hidden, outputs, training method, training algorithm, training threads
+ * int    precision, since version 2
+ * int    activation mode, since version 3
+ * hidden and output layer:
+ *   int    activation, first source unit, number of source units, mask flag
+ *   int    layer number of each neuron
+ *   byte   connection mask bits, row by row, if mask flag is 1
+ * padding to 8 bytes
+ * hidden and output layer:
+ *   double or float weights, one row per neuron, bias weight last
+ * </pre>
+ * Files are loaded through a memory mapping, weights being bulk-copied into layer arrays 
+ * without any per-weight parsing
+ * @author pzeltins
+ *
+ */
+public class NetworkFormat {
+
+	static final int MAGIC = 0x54454E4E; // "NNET" when read as little-endian bytes
+	static final int VERSION = 3;
+	/**
+	 * number of weights written at once
+	 */
+	static final int WRITE_CHUNK = 65536;
+	
+	/**
+	 * Converts network file written by Network.serialize() to binary format
+	 * @param args source file, destination file, optionally "float" to store weights as floats
+	 * @throws IOException
+	 */
+	public static void main(String[] args) throws IOException {
+		if ( args.length < 2 || args.length > 3 ) {
+			System.out.println("usage: NetworkFormat <serialized network file> <binary network file> [float]");
+			return;
+		}
+		Network n = Network.fromPath(args[0]);
+		if ( n == null ) {
+			System.out.println("cannot read network from " + args[0]);
+			return;
+		}
+		if ( args.length == 3 && args[2].equals("float") )
+			n.setPrecision(Layer.PRECISION_FLOAT);
+		write(n, Paths.get(args[1]));
+		System.out.println("converted " + args[0] + " to " + args[1]);
+	}
+	
+	/**
+	 * @param path
+	 * @return true if file at path is in binary network format
+	 * @throws IOException
+	 */
+	public static boolean isBinary(Path path) throws IOException {
+		try ( FileChannel ch = FileChannel.open(path, StandardOpenOption.READ) ) {
+			ByteBuffer b = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+			while ( b.hasRemaining() && ch.read(b) >= 0 );
+			return ( !b.hasRemaining() && b.getInt(0) == MAGIC );
+		}
+	}
+	
+	/**
+	 * Writes network to file in binary format. File is written under a temporary name and then renamed,
+	 * so an interrupted write never leaves a partial file at path
+	 * @param n
+	 * @param path
+	 * @throws IOException
+	 */
+	public static void write(Network n, Path path) throws IOException {
+		ByteBuffer header = header(n);
+		Path temp = temporary(path);
+		try ( FileChannel ch = FileChannel.open(temp, StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING) ) {
+			writeFully(ch, header);
+			ByteBuffer chunk = ByteBuffer.allocateDirect(8 * WRITE_CHUNK).order(ByteOrder.LITTLE_ENDIAN);
+			DoubleBuffer doubles = chunk.asDoubleBuffer();
+			FloatBuffer floats = chunk.asFloatBuffer();
+			for (Layer l : layers(n) ) {
+				// sparse layers are written as dense ones, weights of missing connections being 0
+				l = l.dense();
+				int length = l.size * l.stride;
+				for (int w=0; w<length; w+=WRITE_CHUNK) {
+					int count = Math.min(WRITE_CHUNK, length - w);
+					if ( l instanceof FloatLayer ) {
+						floats.clear();
+						floats.put(((FloatLayer) l).floatWeights, w, count);
+						chunk.clear().limit(4 * count);
+					} else {
+						doubles.clear();
+						doubles.put(l.weights, w, count);
+						chunk.clear().limit(8 * count);
+					}
+					writeFully(ch, chunk);
+				}
+			}
+			ch.force(false);
+		}
+		replace(temp, path);
+	}
+	
+	/**
+	 * @return size of network in binary format
+	 */
+	static long length(Network n) {
+		long length = headerLength(n);
+		for (Layer l : layers(n) ) {
+			length += (long) l.size * l.stride * ( l instanceof FloatLayer ? 4 : 8 );
+		}
+		return length;
+	}
+	
+	/**
+	 * Puts network in binary format into buffer, which must have length(n) bytes remaining
+	 * @param n
+	 * @param b
+	 */
+	static void put(Network n, ByteBuffer b) {
+		b.put(header(n));
+		for (Layer l : layers(n) ) {
+			int length = l.size * l.stride;
+			ByteBuffer weights = b.slice().order(ByteOrder.LITTLE_ENDIAN);
+			if ( l instanceof SparseLayer ) {
+				putWeights((SparseLayer) l, weights.asDoubleBuffer());
+				b.position(b.position() + 8 * length);
+			} else if ( l instanceof FloatLayer ) {
+				weights.asFloatBuffer().put(((FloatLayer) l).floatWeights, 0, length);
+				b.position(b.position() + 4 * length);
+			} else {
+				weights.asDoubleBuffer().put(l.weights, 0, length);
+				b.position(b.position() + 8 * length);
+			}
+		}
+	}
+	
+	/**
+	 * @return temporary file next to path that is renamed to path once written
+	 */
+	static Path temporary(Path path) {
+		return path.resolveSibling(path.getFileName() + ".tmp");
+	}
+	
+	/**
+	 * Renames written temporary file to its final name, replacing previous file atomically where supported
+	 */
+	static void replace(Path temp, Path path) throws IOException {
+		try {
+			Files.move(temp, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+		} catch (AtomicMoveNotSupportedException e) {
+			Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+	
+	private static Layer[] layers(Network n) {
+		return new Layer[] { n.hidden, n.output };
+	}
+	
+	/**
+	 * @return whether connection mask of layer is written. Sparse layers are written as dense ones with mask
+	 */
+	private static boolean masked(Layer l) {
+		return ( l.mask != null || l instanceof SparseLayer );
+	}
+	
+	private static int headerLength(Network n) {
+		int headerSize = 10 * 4;
+		for (Layer l : layers(n) ) {
+			headerSize += 4 * 4 + 4 * l.size + ( masked(l) ? ( l.size * l.stride + 7 ) / 8 : 0 );
+		}
+		return ( headerSize + 7 ) & ~7;
+	}
+	
+	/**
+	 * @return header and layer structure, padded to 8 bytes, ready to be written
+	 */
+	private static ByteBuffer header(Network n) {
+		Layer[] layers = layers(n);
+		ByteBuffer header = ByteBuffer.allocate(headerLength(n)).order(ByteOrder.LITTLE_ENDIAN);
+		header.putInt(MAGIC).putInt(VERSION);
+		header.putInt(n.inputLayerSize).putInt(n.hiddenLayerSize).putInt(n.outputLayerSize);
+		header.putInt(n.getTrainingMethod()).putInt(n.getTrainingAlgorithm()).putInt(n.getTrainingThreads());
+		header.putInt(n.getPrecision()).putInt(n.getActivationMode());
+		for (Layer l : layers ) {
+			header.putInt(l.activation).putInt(l.srcFrom).putInt(l.fanIn).putInt(masked(l) ? 1 : 0);
+		}
+		for (Layer l : layers ) {
+			for (int j=0; j<l.size; j++) {
+				header.putInt(l.depth[j]);
+			}
+			if ( l instanceof SparseLayer ) {
+				putMask((SparseLayer) l, header);
+			} else if ( l.mask != null ) {
+				for (int w=0; w<l.mask.length; w+=8) {
+					int bits = 0;
+					for (int b=0; b<8 && w+b<l.mask.length; b++) {
+						if ( l.mask[w + b] ) bits |= 1 << b;
+					}
+					header.put((byte) bits);
+				}
+			}
+		}
+		header.clear();
+		return header;
+	}
+	
+	/**
+	 * Puts connection mask bits of sparse layer at position of zero-filled buffer, advancing it past them
+	 */
+	private static void putMask(SparseLayer l, ByteBuffer b) {
+		int base = b.position();
+		for (int j=0; j<l.size; j++) {
+			for (int p=l.rowStart[j]; p<l.rowStart[j + 1]; p++) {
+				int w = j * l.stride + l.columns[p];
+				b.put(base + w / 8, (byte) ( b.get(base + w / 8) | 1 << ( w % 8 ) ));
+			}
+		}
+		b.position(base + ( l.size * l.stride + 7 ) / 8);
+	}
+	
+	/**
+	 * Puts weights of sparse layer in dense row layout, weights of missing connections being 0
+	 */
+	private static void putWeights(SparseLayer l, DoubleBuffer d) {
+		for (int j=0; j<l.size; j++) {
+			int w = j * l.stride;
+			for (int p=l.rowStart[j]; p<l.rowStart[j + 1]; p++) {
+				for (int column=j * l.stride + l.columns[p]; w<column; w++) {
+					d.put(0D);
+				}
+				d.put(l.weights[p]);
+				w++;
+			}
+		}
+	}
+	
+	/**
+	 * @throws IOException if fewer than length bytes are left in buffer
+	 */
+	private static void require(ByteBuffer buf, long length) throws IOException {
+		if ( buf.remaining() < length )
+			throw new IOException("truncated network file");
+	}
+	
+	static void writeFully(FileChannel ch, ByteBuffer b) throws IOException {
+		while ( b.hasRemaining() ) {
+			ch.write(b);
+		}
+	}
+	
+	/**
+	 * Reads network from binary file
+	 * @param path
+	 * @return
+	 * @throws IOException if file is not a network file, is of unsupported version, or is truncated or damaged
+	 */
+	public static Network read(Path path) throws IOException {
+		try ( FileChannel ch = FileChannel.open(path, StandardOpenOption.READ) ) {
+			MappedByteBuffer buf = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+			return read(buf);
+		}
+	}
+	
+	static Network read(ByteBuffer buf) throws IOException {
+		buf.order(ByteOrder.LITTLE_ENDIAN);
+		if ( buf.remaining() < 8 || buf.getInt() != MAGIC )
+			throw new IOException("not a network file");
+		int version = buf.getInt();
+		if ( version < 1 || version > VERSION )
+			throw new IOException("unsupported network file version " + version);
+		require(buf, 4 * ( 6 + ( version >= 2 ? 1 : 0 ) + ( version >= 3 ? 1 : 0 ) + 2 * 4 ));
+		Network n = new Network();
+		n.inputLayerSize = buf.getInt();
+		n.hiddenLayerSize = buf.getInt();
+		n.outputLayerSize = buf.getInt();
+		long units = (long) n.inputLayerSize + n.hiddenLayerSize + n.outputLayerSize;
+		if ( n.inputLayerSize < 0 || n.hiddenLayerSize < 0 || n.outputLayerSize < 0 || units > Integer.MAX_VALUE )
+			throw new IOException("damaged network file, layer sizes " + n.inputLayerSize + "-" + n.hiddenLayerSize + "-" + n.outputLayerSize);
+		int trainingMethod = buf.getInt();
+		int trainingAlgorithm = buf.getInt();
+		int trainingThreads = buf.getInt();
+		int precision = ( version >= 2 ? buf.getInt() : Layer.PRECISION_DOUBLE );
+		int activationMode = ( version >= 3 ? buf.getInt() : Layer.ACTIVATION_MODE_EXACT );
+		int[] sizes = { n.hiddenLayerSize, n.outputLayerSize };
+		int[] firstUnits = { n.inputLayerSize, n.inputLayerSize + n.hiddenLayerSize };
+		int[] activations = new int[2], srcFroms = new int[2], fanIns = new int[2];
+		boolean[] masked = new boolean[2];
+		// whole file is checked before anything is allocated, so damaged sizes do not exhaust heap
+		long structure = 0L, weights = 0L;
+		for (int i=0; i<sizes.length; i++) {
+			activations[i] = buf.getInt();
+			srcFroms[i] = buf.getInt();
+			fanIns[i] = buf.getInt();
+			masked[i] = ( buf.getInt() != 0 );
+			long length = (long) sizes[i] * ( fanIns[i] + 1L );
+			if ( srcFroms[i] < 0 || fanIns[i] < 0 || (long) srcFroms[i] + fanIns[i] > units || length > Integer.MAX_VALUE )
+				throw new IOException("damaged network file, source units " + srcFroms[i] + "+" + fanIns[i] + " of layer " + i);
+			structure += 4L * sizes[i] + ( masked[i] ? ( length + 7 ) / 8 : 0 );
+			weights += length * ( precision == Layer.PRECISION_FLOAT ? 4 : 8 );
+		}
+		long padded = ( buf.position() + structure + 7 ) & ~7L;
+		require(buf, padded - buf.position() + weights);
+		Layer[] layers = new Layer[2];
+		for (int i=0; i<layers.length; i++) {
+			layers[i] = ( precision == Layer.PRECISION_FLOAT ? new FloatLayer(sizes[i], firstUnits[i], srcFroms[i], fanIns[i], activations[i], false) :
+				new Layer(sizes[i], firstUnits[i], srcFroms[i], fanIns[i], activations[i], false) );
+		}
+		for (int i=0; i<layers.length; i++) {
+			Layer l = layers[i];
+			for (int j=0; j<l.size; j++) {
+				l.depth[j] = buf.getInt();
+			}
+			if ( masked[i] ) {
+				l.mask = new boolean[l.size * l.stride];
+				for (int w=0; w<l.mask.length; w+=8) {
+					int bits = buf.get();
+					for (int b=0; b<8 && w+b<l.mask.length; b++) {
+						l.mask[w + b] = ( bits & (1 << b) ) != 0;
+					}
+				}
+			}
+		}
+		buf.position(( buf.position() + 7 ) & ~7);
+		if ( precision == Layer.PRECISION_FLOAT ) {
+			FloatBuffer floats = buf.slice().order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer();
+			for (Layer l : layers ) {
+				floats.get(((FloatLayer) l).floatWeights);
+			}
+		} else {
+			DoubleBuffer doubles = buf.slice().order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer();
+			for (Layer l : layers ) {
+				doubles.get(l.weights);
+			}
+		}
+		n.init(layers[0], layers[1]);
+		n.setTrainingMethod(trainingMethod);
+		n.setTrainingAlgorithm(trainingAlgorithm);
+		n.setTrainingThreads(trainingThreads);
+		n.setActivationMode(activationMode);
+		return n;
+	}
+	
+}
@@ -3,7 +3,6 @@ package com.greatnowhere.neural;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Random;
 
 /**
  * Training 'manager' for a NN
@@ -14,12 +13,24 @@ import java.util.Random;
 public class NetworkTrainer {
 
 	List<TrainingSet> trainingSet = new ArrayList<TrainingSet>(); 
+	/**
+	 * trainingSet as passed to samplers. The same instance is passed every epoch, so samplers keep their state
+	 */
+	TrainingList trainingList = new TrainingList(trainingSet);
+	/**
+	 * dataset file used instead of trainingSet when set
+	 */
+	TrainingStore trainingStore;
 	double learningRate, momentum;
 	/**
 	 * network output that differs from expected by less than errorMargin will be considered 'success'
 	 */
 	public double errorMargin = 0.05D; 
 	public int trainingIterations = 0;
+	/**
+	 * max number of specimens trained at once by trainHerd
+	 */
+	public int maxParallelSpecimens = Runtime.getRuntime().availableProcessors();
 	
 	public Network n = new Network();
 	
@@ -30,35 +41,98 @@ public class NetworkTrainer {
 	}
 	
 	public void init(String networkStateFilePath, double learningRate, double momentum) throws IOException {
-		n = Network.fromPath(networkStateFilePath);
+		Network loaded = Network.fromPath(networkStateFilePath);
+		loaded.listeners = n.listeners;
+		loaded.sampler = n.sampler;
+		loaded.setOptimizer(n.optimizer);
+		n = loaded;
 		this.learningRate = learningRate;
 		this.momentum = momentum;
 	}
 	
 	public void addTrainingSet(double[] inputs,double output,String label) {
+		addTrainingSet(inputs, new double[] { output }, label);
+	}
+	
+	/**
+	 * Adds sample with expected values of several outputs, all trained in a single backpropagation pass
+	 * @param inputs
+	 * @param outputs expected values of outputs 0...outputs.length-1
+	 * @param label
+	 */
+	public void addTrainingSet(double[] inputs,double[] outputs,String label) {
+		if ( outputs.length == 0 )
+			throw new IllegalArgumentException("sample has no expected outputs");
 		TrainingSet t = new TrainingSet();
 		t.inputs = inputs;
-		t.output = output;
+		t.outputs = outputs;
 		t.label = label;
 		trainingSet.add(t);
 	}
 	
+	/**
+	 * Trains on samples of a dataset file instead of those added by addTrainingSet,
+	 * so that datasets larger than the heap can be used
+	 * @param store can be null to train on added samples again
+	 */
+	public void setTrainingStore(TrainingStore store) {
+		trainingStore = store;
+	}
+	
+	TrainingData trainingData() {
+		return ( trainingStore != null ? trainingStore : trainingList );
+	}
 	
+	/**
+	 * Sets number of threads used to train the network, see Network.setTrainingThreads
+	 * @param threads
+	 */
+	public void setTrainingThreads(int threads) {
+		n.setTrainingThreads(threads);
+	}
+	
+	/**
+	 * Adds listener receiving statistics of each training epoch, see Network.addTrainingListener
+	 * @param l
+	 */
+	public void addListener(TrainingListener l) {
+		n.addTrainingListener(l);
+	}
+	
+	public void removeListener(TrainingListener l) {
+		n.removeTrainingListener(l);
+	}
+	
+	/**
+	 * Sets sampler choosing samples of each epoch, see Network.setSampler
+	 * @param s
+	 */
+	public void setSampler(Sampler s) {
+		n.setSampler(s);
+	}
+	
+	/**
+	 * Sets optimizer computing weight changes, see Network.setOptimizer
+	 * @param o
+	 */
+	public void setOptimizer(Optimizer o) {
+		n.setOptimizer(o);
+	}
 	
 	public void merge(NetworkTrainer t) {
 		this.n.merge(t.n);
 	}
 
 	public void train(String persistenceFile) throws InterruptedException, IOException {
-		Utils.train(n, trainingSet, learningRate, momentum, errorMargin, persistenceFile);
+		Utils.train(n, trainingData(), learningRate, momentum, errorMargin, persistenceFile);
 	}
 
 	public boolean trainCycle(String persistenceFile, int numIterations, int expectedSuccessRate, boolean printProgress) throws InterruptedException, IOException {
-		return Utils.trainCycle(n, trainingSet, learningRate, momentum, errorMargin, persistenceFile, numIterations, expectedSuccessRate, printProgress);
+		return Utils.trainCycle(n, trainingData(), learningRate, momentum, errorMargin, persistenceFile, numIterations, expectedSuccessRate, printProgress);
 	}
 	
 	public boolean trainGenetic(String persistenceFile, int numIterations, int expectedSuccessRate, int numSpecimens, int numGenerations, boolean printProgress) throws InterruptedException, IOException {
-		n = Utils.trainGenetic(n, trainingSet,
+		n = Utils.trainGenetic(n, trainingData(),
 				learningRate, momentum, errorMargin,
 				persistenceFile, numSpecimens, numIterations, 
 				numGenerations, expectedSuccessRate,printProgress);
@@ -67,32 +141,72 @@ public class NetworkTrainer {
 	
 	public boolean trainHerd(String persistenceFile, int numIterations, int expectedSuccessRate, int numSpecimens, boolean printProgress) throws InterruptedException, IOException {
 		n = Utils.trainHerd
-				(n, trainingSet,learningRate, momentum, errorMargin,
+				(n, trainingData(),learningRate, momentum, errorMargin,
 				persistenceFile, numSpecimens, numIterations, 
-				expectedSuccessRate,printProgress);
+				expectedSuccessRate,printProgress,maxParallelSpecimens);
 		return n.successRate >= expectedSuccessRate;
 	}
 	
 }
 
 /**
- * Class representing a single training set: inputs corresponding to output value
+ * Class representing a single training set: inputs corresponding to output values
  * @author pzeltins
  *
  */
-class TrainingSet implements Comparable<TrainingSet> {
+class TrainingSet {
 	double[] inputs;
-	double output;
-	double error;
+	double[] outputs;
 	String label;
-	double order = r.nextDouble(); // random order
 	
-	static Random r = new Random();
+}
+
+/**
+ * Training data backed by a list of training sets
+ * @author pzeltins
+ *
+ */
+class TrainingList implements TrainingData {
+	List<TrainingSet> sets;
 	
+	TrainingList(List<TrainingSet> sets) {
+		this.sets = sets;
+	}
+
+	@Override
+	public int size() {
+		return sets.size();
+	}
+
+	@Override
+	public double load(int index, Network n) {
+		TrainingSet t = sets.get(index);
+		n.setInputValues(t.inputs);
+		return t.outputs[0];
+	}
+
+	@Override
+	public int load(int index, Network n, double[] targets) {
+		TrainingSet t = sets.get(index);
+		if ( t.outputs.length > targets.length )
+			throw new IllegalArgumentException("network has " + targets.length + " outputs, sample has " + t.outputs.length);
+		n.setInputValues(t.inputs);
+		System.arraycopy(t.outputs, 0, targets, 0, t.outputs.length);
+		return t.outputs.length;
+	}
+
+	/**
+	 * @return expected output of single-output samples, or index of the largest expected output
+	 * so that one-hot encoded classes are told apart
+	 */
 	@Override
-	// random sorting
-	public int compareTo(TrainingSet arg0) {
-		return Double.compare(order, arg0.order);
+	public double target(int index) {
+		double[] outputs = sets.get(index).outputs;
+		int max = 0;
+		for (int j=1; j<outputs.length; j++) {
+			if ( outputs[j] > outputs[max] ) max = j;
+		}
+		return ( outputs.length == 1 ? outputs[0] : max );
 	}
 	
 }
\ No newline at end of file
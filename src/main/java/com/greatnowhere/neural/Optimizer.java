@@ -0,0 +1,67 @@
+package com.greatnowhere.neural;
+
+/**
+ * Turns gradients into weight changes, owning per-weight state such as momentum or step sizes.
+ * Each layer has its own optimizer created from the one set on the network, see Network.setOptimizer.
+ * Gradients point downhill, being error gradient of neuron output times input, so weights are increased
+ * by positive gradients. In stochastic mode a layer is stepped row by row after each sample,
+ * in batch modes once per commit with gradients summed over the batch
+ * @author pzeltins
+ *
+ */
+public interface Optimizer {
+
+	/**
+	 * @param weights number of weights of the layer
+	 * @param precision Layer.PRECISION_DOUBLE or Layer.PRECISION_FLOAT, precision of the state
+	 * @return optimizer of the same kind and settings, with state for a layer
+	 */
+	Optimizer create(int weights, int precision);
+
+	/**
+	 * Called once before each sample in stochastic mode, and before each commit in batch modes
+	 */
+	void next();
+
+	/**
+	 * @return optimizer sharing state with this one, used by a worker thread training the same layer.
+	 * Optimizers whose next() changes state of all weights return an instance keeping that state of its own,
+	 * so that workers calling next() at once do not overwrite each other's
+	 */
+	default Optimizer view() {
+		return this;
+	}
+
+	/**
+	 * @return true if optimizer only works with gradients of whole batches, in which case
+	 * stochastic mode sums gradients and steps once per epoch too
+	 */
+	default boolean isBatchOnly() {
+		return false;
+	}
+
+	/**
+	 * Called before next() of a batch step with total error of the batch, measured with weights
+	 * of the previous step. Used by optimizers that take back steps which increased error
+	 * @param error
+	 */
+	default void batchError(double error) {
+	}
+
+	/**
+	 * Updates weights[from...from+n) and their state, then clears gradients used
+	 * @param weights
+	 * @param from index of first weight
+	 * @param gradients
+	 * @param g0 index of gradient of first weight
+	 * @param n
+	 * @param learningRate
+	 */
+	void step(double[] weights, int from, double[] gradients, int g0, int n, double learningRate);
+
+	/**
+	 * Same as step on double weights, for float layers
+	 */
+	void step(float[] weights, int from, float[] gradients, int g0, int n, double learningRate);
+
+}
@@ -0,0 +1,61 @@
+package com.greatnowhere.neural;
+
+/**
+ * Read-only view of a trained network that can be used by many threads at once.
+ * Weights are shared with the network, unit values are kept in per-thread scratch arrays, 
+ * so predictions do not lock or allocate. Training the network while predicting gives undefined results
+ * @author pzeltins
+ *
+ */
+public class Predictor {
+
+	private final Network n;
+	private final ThreadLocal<double[]> scratch = new ThreadLocal<>();
+	
+	Predictor(Network n) {
+		this.n = n;
+	}
+	
+	/**
+	 * Computes network outputs for specified inputs
+	 * @param in
+	 * @param out receives one value per output neuron
+	 */
+	public void predict(double[] in, double[] out) {
+		double[] units = compute(in);
+		System.arraycopy(units, n.output.firstUnit, out, 0, n.outputLayerSize);
+	}
+	
+	/**
+	 * Computes network for specified inputs
+	 * @param in
+	 * @return value of first output neuron
+	 */
+	public double predict(double[] in) {
+		double[] units = compute(in);
+		return units[n.output.firstUnit];
+	}
+	
+	private double[] compute(double[] in) {
+		Layer hidden = n.hidden;
+		Layer output = n.output;
+		int unitCount = output.firstUnit + output.size;
+		double[] units = scratch.get();
+		if ( units == null || units.length != unitCount ) {
+			// first call on this thread, or network topology has changed
+			units = new double[unitCount];
+			scratch.set(units);
+		}
+		System.arraycopy(in, 0, units, 0, n.inputLayerSize);
+		if ( hidden.readsSelf() ) {
+			// whole wavefronts one after another
+			hidden.schedule();
+			hidden.computeScheduled(units, null, 0, hidden.size);
+		} else {
+			hidden.compute(units, null, 0, hidden.size);
+		}
+		output.compute(units, null, 0, output.size);
+		return units;
+	}
+	
+}
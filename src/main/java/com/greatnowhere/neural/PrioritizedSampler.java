@@ -0,0 +1,144 @@
+package com.greatnowhere.neural;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * Draws samples with probability growing with the error they had when last trained, so samples
+ * the network gets wrong are revisited more often than those it has learned. Probability of sample i is
+ * <pre>
+ * uniform / n + ( 1 - uniform ) * p(i) / sum(p),  p(i) = ( error(i) + MIN_ERROR ) ^ exponent
+ * </pre>
+ * Samples not trained yet get the highest priority seen so far. Epoch has as many draws as
+ * the training data, taken with replacement in O(n) using an alias table (Vose).
+ * As an epoch is biased towards hard samples, its success rate is lower than that of the whole training data
+ * @author pzeltins
+ *
+ */
+public class PrioritizedSampler implements Sampler {
+
+	/**
+	 * added to errors so that learned samples keep being visited
+	 */
+	static final double MIN_ERROR = 1E-4D;
+
+	double exponent;
+	double uniform;
+	SplittableRandom r;
+	/**
+	 * error of each sample when last trained, NaN if not trained yet
+	 */
+	float[] errors = new float[0];
+	int[] order = new int[0];
+	/**
+	 * alias table, probability of keeping a slot and sample taken otherwise
+	 */
+	double[] keep = new double[0];
+	int[] alias = new int[0];
+	int[] small = new int[0], large = new int[0];
+
+	/**
+	 * Priority proportional to error, with 10% of draws uniform
+	 */
+	public PrioritizedSampler() {
+		this(1D, 0.1D, new SplittableRandom());
+	}
+
+	/**
+	 * @param exponent how strongly error affects priority, 0 is uniform sampling
+	 * @param uniform 0...1 share of draws made regardless of error
+	 */
+	public PrioritizedSampler(double exponent, double uniform) {
+		this(exponent, uniform, new SplittableRandom());
+	}
+
+	/**
+	 * @param exponent
+	 * @param uniform
+	 * @param seed makes the order of epochs repeatable
+	 */
+	public PrioritizedSampler(double exponent, double uniform, long seed) {
+		this(exponent, uniform, new SplittableRandom(seed));
+	}
+
+	PrioritizedSampler(double exponent, double uniform, SplittableRandom r) {
+		if ( exponent < 0D || uniform < 0D || uniform > 1D )
+			throw new IllegalArgumentException("exponent " + exponent + " uniform " + uniform);
+		this.exponent = exponent;
+		this.uniform = uniform;
+		this.r = r;
+	}
+
+	@Override
+	public int[] next(TrainingData data) {
+		int n = data.size();
+		if ( errors.length != n ) {
+			errors = new float[n];
+			Arrays.fill(errors, Float.NaN);
+			order = new int[n];
+			keep = new double[n];
+			alias = new int[n];
+			small = new int[n];
+			large = new int[n];
+		}
+		if ( n == 0 )
+			return order;
+		// priorities, scaled so that they average 1
+		double max = 0D, sum = 0D;
+		for (int i=0; i<n; i++) {
+			if ( !Float.isNaN(errors[i]) ) {
+				keep[i] = Math.pow(errors[i] + MIN_ERROR, exponent);
+				max = Math.max(max, keep[i]);
+			}
+		}
+		if ( max == 0D )
+			max = 1D;
+		for (int i=0; i<n; i++) {
+			if ( Float.isNaN(errors[i]) )
+				keep[i] = max;
+			sum += keep[i];
+		}
+		for (int i=0; i<n; i++) {
+			keep[i] = uniform + ( 1D - uniform ) * keep[i] * n / sum;
+		}
+		buildAliases(n);
+		for (int i=0; i<n; i++) {
+			int slot = r.nextInt(n);
+			order[i] = ( r.nextDouble() < keep[slot] ? slot : alias[slot] );
+		}
+		return order;
+	}
+
+	/**
+	 * Turns weights in keep, averaging 1, into alias table
+	 */
+	void buildAliases(int n) {
+		int s = 0, l = 0;
+		for (int i=0; i<n; i++) {
+			alias[i] = i;
+			if ( keep[i] < 1D ) small[s++] = i; else large[l++] = i;
+		}
+		while ( s > 0 && l > 0 ) {
+			int a = small[--s];
+			int b = large[--l];
+			alias[a] = b;
+			// b gives up the part of a's slot that a does not fill
+			keep[b] -= 1D - keep[a];
+			if ( keep[b] < 1D ) small[s++] = b; else large[l++] = b;
+		}
+		// what is left is 1 up to rounding
+		while ( l > 0 ) keep[large[--l]] = 1D;
+		while ( s > 0 ) keep[small[--s]] = 1D;
+	}
+
+	@Override
+	public void trained(int index, double error) {
+		errors[index] = (float) error;
+	}
+
+	@Override
+	public Sampler copy() {
+		return new PrioritizedSampler(exponent, uniform, r.nextLong());
+	}
+
+}
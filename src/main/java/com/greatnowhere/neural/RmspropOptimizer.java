@@ -0,0 +1,78 @@
+package com.greatnowhere.neural;
+
+/**
+ * RMSprop, dividing each gradient by root of a moving average of its squares, so weights of
+ * inputs with small and large gradients learn at similar speed. Learning rate is a step size,
+ * around 0.001 rather than the 0.1 used by momentum backpropagation
+ * @author pzeltins
+ *
+ */
+public class RmspropOptimizer implements Optimizer {
+
+	double decay;
+	double epsilon;
+	/**
+	 * moving average of squared gradient of each weight
+	 */
+	double[] meanSquares;
+	float[] floatMeanSquares;
+
+	/**
+	 * Decay 0.9, epsilon 1E-8
+	 */
+	public RmspropOptimizer() {
+		this(0.9D, 1E-8D);
+	}
+
+	/**
+	 * @param decay 0...1, weight of previous average
+	 * @param epsilon added to root of average, keeping steps of weights with tiny gradients finite
+	 */
+	public RmspropOptimizer(double decay, double epsilon) {
+		this.decay = decay;
+		this.epsilon = epsilon;
+	}
+
+	@Override
+	public Optimizer create(int weights, int precision) {
+		RmspropOptimizer o = new RmspropOptimizer(decay, epsilon);
+		if ( precision == Layer.PRECISION_FLOAT )
+			o.floatMeanSquares = new float[weights];
+		else
+			o.meanSquares = new double[weights];
+		return o;
+	}
+
+	@Override
+	public void next() {
+	}
+
+	@Override
+	public void step(double[] weights, int from, double[] gradients, int g0, int n, double learningRate) {
+		double[] s = meanSquares;
+		double rho = decay, eps = epsilon;
+		for (int i=0; i<n; i++) {
+			int w = from + i;
+			double g = gradients[g0 + i];
+			double ms = rho * s[w] + ( 1D - rho ) * g * g;
+			s[w] = ms;
+			weights[w] += learningRate * g / ( Math.sqrt(ms) + eps );
+			gradients[g0 + i] = 0D;
+		}
+	}
+
+	@Override
+	public void step(float[] weights, int from, float[] gradients, int g0, int n, double learningRate) {
+		float[] s = floatMeanSquares;
+		double rho = decay, eps = epsilon;
+		for (int i=0; i<n; i++) {
+			int w = from + i;
+			double g = gradients[g0 + i];
+			double ms = rho * s[w] + ( 1D - rho ) * g * g;
+			s[w] = FloatLayer.narrow(ms);
+			weights[w] += learningRate * g / ( Math.sqrt(ms) + eps );
+			gradients[g0 + i] = 0F;
+		}
+	}
+
+}
@@ -0,0 +1,188 @@
+package com.greatnowhere.neural;
+
+import java.util.Arrays;
+
+/**
+ * Resilient propagation. Each weight has its own step size, grown while its gradient keeps
+ * its sign and shrunk when the sign flips. Only gradient signs are used, so learning rate is ignored.
+ * Works on gradients of whole batches, so stochastic mode trains in batches too. Variants:
+ * <ul>
+ * <li>IRPROP_MINUS: after a sign flip the gradient is forgotten, so the weight rests for one step 
+ * and its step size is not shrunk again by the next one</li>
+ * <li>IRPROP_PLUS: in addition, if batch error has grown, weights whose sign flipped take back 
+ * their previous change. Needs another value per weight</li>
+ * </ul>
+ * Step sizes and previous gradients are kept in primitive arrays, updated by a single
+ * branch-free pass over the layer on each commit
+ * @author pzeltins
+ *
+ */
+public class RpropOptimizer implements Optimizer {
+
+	public static final int IRPROP_MINUS = 1;
+	public static final int IRPROP_PLUS = 2;
+
+	public static final double INCREASE = 1.2D;
+	public static final double DECREASE = 0.5D;
+
+	int variant;
+	/**
+	 * error of the previous batch, and whether error has grown since
+	 */
+	double previousError = Double.MAX_VALUE;
+	boolean worse;
+	/**
+	 * step size, previous gradient and previous change of each weight
+	 */
+	double[] steps, previous, changes;
+	float[] floatSteps, floatPrevious, floatChanges;
+
+	/**
+	 * iRPROP+
+	 */
+	public RpropOptimizer() {
+		this(IRPROP_PLUS);
+	}
+
+	/**
+	 * @param variant IRPROP_MINUS or IRPROP_PLUS
+	 */
+	public RpropOptimizer(int variant) {
+		if ( variant != IRPROP_MINUS && variant != IRPROP_PLUS )
+			throw new IllegalArgumentException("unknown RPROP variant " + variant);
+		this.variant = variant;
+	}
+
+	public int getVariant() {
+		return variant;
+	}
+
+	@Override
+	public Optimizer create(int weights, int precision) {
+		RpropOptimizer o = new RpropOptimizer(variant);
+		if ( precision == Layer.PRECISION_FLOAT ) {
+			o.floatSteps = new float[weights];
+			Arrays.fill(o.floatSteps, (float) Layer.RPROP_INITIAL_UPDATE_VALUE);
+			o.floatPrevious = new float[weights];
+			if ( variant == IRPROP_PLUS )
+				o.floatChanges = new float[weights];
+		} else {
+			o.steps = new double[weights];
+			Arrays.fill(o.steps, Layer.RPROP_INITIAL_UPDATE_VALUE);
+			o.previous = new double[weights];
+			if ( variant == IRPROP_PLUS )
+				o.changes = new double[weights];
+		}
+		return o;
+	}
+
+	@Override
+	public boolean isBatchOnly() {
+		return true;
+	}
+
+	@Override
+	public void batchError(double error) {
+		worse = ( error > previousError );
+		previousError = error;
+	}
+
+	@Override
+	public void next() {
+	}
+
+	@Override
+	public void step(double[] weights, int from, double[] gradients, int g0, int n, double learningRate) {
+		if ( variant == IRPROP_PLUS )
+			stepPlus(weights, from, gradients, g0, n);
+		else
+			stepMinus(weights, from, gradients, g0, n);
+	}
+
+	void stepMinus(double[] weights, int from, double[] gradients, int g0, int n) {
+		double[] s = steps, p = previous;
+		for (int i=0; i<n; i++) {
+			int w = from + i;
+			double g = gradients[g0 + i];
+			double sign = g * p[w];
+			double d = s[w];
+			d = ( sign > 0D ? Math.min(d * INCREASE, Layer.MAX_RPROP_UPDATE_VALUE) : 
+				sign < 0D ? Math.max(d * DECREASE, Layer.MIN_RPROP_UPDATE_VALUE) : d );
+			g = ( sign < 0D ? 0D : g );
+			s[w] = d;
+			p[w] = g;
+			weights[w] += ( g > 0D ? d : g < 0D ? -d : 0D );
+			gradients[g0 + i] = 0D;
+		}
+	}
+
+	void stepPlus(double[] weights, int from, double[] gradients, int g0, int n) {
+		double[] s = steps, p = previous, c = changes;
+		// sign flips revert previous change only if error has grown
+		double revert = ( worse ? -1D : 0D );
+		for (int i=0; i<n; i++) {
+			int w = from + i;
+			double g = gradients[g0 + i];
+			double sign = g * p[w];
+			double d = s[w];
+			d = ( sign > 0D ? Math.min(d * INCREASE, Layer.MAX_RPROP_UPDATE_VALUE) : 
+				sign < 0D ? Math.max(d * DECREASE, Layer.MIN_RPROP_UPDATE_VALUE) : d );
+			double change = ( sign < 0D ? revert * c[w] : g > 0D ? d : g < 0D ? -d : 0D );
+			s[w] = d;
+			p[w] = ( sign < 0D ? 0D : g );
+			c[w] = change;
+			weights[w] += change;
+			gradients[g0 + i] = 0D;
+		}
+	}
+
+	@Override
+	public void step(float[] weights, int from, float[] gradients, int g0, int n, double learningRate) {
+		if ( variant == IRPROP_PLUS )
+			stepPlus(weights, from, gradients, g0, n);
+		else
+			stepMinus(weights, from, gradients, g0, n);
+	}
+
+	void stepMinus(float[] weights, int from, float[] gradients, int g0, int n) {
+		float[] s = floatSteps, p = floatPrevious;
+		float max = (float) Layer.MAX_RPROP_UPDATE_VALUE, min = (float) Layer.MIN_RPROP_UPDATE_VALUE;
+		for (int i=0; i<n; i++) {
+			int w = from + i;
+			float g = gradients[g0 + i];
+			// signs are compared rather than multiplied, as product of floats may underflow to zero
+			float q = p[w];
+			boolean kept = ( g > 0F && q > 0F ) || ( g < 0F && q < 0F );
+			boolean flipped = ( g > 0F && q < 0F ) || ( g < 0F && q > 0F );
+			float d = s[w];
+			d = ( kept ? Math.min(d * (float) INCREASE, max) : flipped ? Math.max(d * (float) DECREASE, min) : d );
+			g = ( flipped ? 0F : g );
+			s[w] = d;
+			p[w] = g;
+			weights[w] += ( g > 0F ? d : g < 0F ? -d : 0F );
+			gradients[g0 + i] = 0F;
+		}
+	}
+
+	void stepPlus(float[] weights, int from, float[] gradients, int g0, int n) {
+		float[] s = floatSteps, p = floatPrevious, c = floatChanges;
+		float max = (float) Layer.MAX_RPROP_UPDATE_VALUE, min = (float) Layer.MIN_RPROP_UPDATE_VALUE;
+		float revert = ( worse ? -1F : 0F );
+		for (int i=0; i<n; i++) {
+			int w = from + i;
+			float g = gradients[g0 + i];
+			float q = p[w];
+			boolean kept = ( g > 0F && q > 0F ) || ( g < 0F && q < 0F );
+			boolean flipped = ( g > 0F && q < 0F ) || ( g < 0F && q > 0F );
+			float d = s[w];
+			d = ( kept ? Math.min(d * (float) INCREASE, max) : flipped ? Math.max(d * (float) DECREASE, min) : d );
+			float change = ( flipped ? revert * c[w] : g > 0F ? d : g < 0F ? -d : 0F );
+			s[w] = d;
+			p[w] = ( flipped ? 0F : g );
+			c[w] = change;
+			weights[w] += change;
+			gradients[g0 + i] = 0F;
+		}
+	}
+
+}
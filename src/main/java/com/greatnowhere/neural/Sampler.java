@@ -0,0 +1,29 @@
+package com.greatnowhere.neural;
+
+/**
+ * Chooses samples each training epoch visits, and their order, see Network.setSampler
+ * @author pzeltins
+ *
+ */
+public interface Sampler {
+
+	/**
+	 * Called at the beginning of each epoch
+	 * @param data
+	 * @return indexes of samples to train, in training order. Array may be reused by the next call
+	 */
+	int[] next(TrainingData data);
+
+	/**
+	 * Called after each sample is trained. Training threads call it concurrently for different samples
+	 * @param index
+	 * @param error
+	 */
+	void trained(int index, double error);
+
+	/**
+	 * @return sampler of the same kind and settings without state of this one, used by copied networks
+	 */
+	Sampler copy();
+
+}
@@ -0,0 +1,380 @@
+package com.greatnowhere.neural;
+
+import java.util.Arrays;
+
+/**
+ * Layer keeping only connected weights, in compressed sparse rows. Weights of neuron j are
+ * weights[rowStart[j]]...weights[rowStart[j + 1] - 1], sorted by source column, columns holding
+ * the column of each weight in the row layout of dense layers. Bias is the last weight of every row.
+ * Per-weight training state and optimizer state are indexed the same way as weights.
+ * Used for double precision layers left sparse by mutation, see Layer.withLayout
+ * @author pzeltins
+ *
+ */
+public class SparseLayer extends Layer {
+
+	int[] rowStart;
+	int[] columns;
+
+	/**
+	 * Converts a dense layer, keeping its weights and training state
+	 * @param dense
+	 */
+	SparseLayer(Layer dense) {
+		dense.copyParameters(this);
+		int count = 0;
+		for (int j=0; j<size; j++) {
+			for (int i=0; i<fanIn; i++) {
+				if ( dense.isConnected(j, srcFrom + i) ) count++;
+			}
+			count++;
+		}
+		rowStart = new int[size + 1];
+		columns = new int[count];
+		weights = new double[count];
+		boolean training = ( dense.deltaWeights != null );
+		if ( training ) {
+			deltaWeights = new double[count];
+			totalDeltaWeights = new double[count];
+		}
+		int p = 0;
+		for (int j=0; j<size; j++) {
+			rowStart[j] = p;
+			for (int i=0; i<stride; i++) {
+				if ( i < fanIn && !dense.isConnected(j, srcFrom + i) )
+					continue;
+				int w = j * stride + i;
+				columns[p] = i;
+				weights[p] = dense.weights[w];
+				if ( training ) {
+					deltaWeights[p] = dense.deltaWeights[w];
+					totalDeltaWeights[p] = dense.totalDeltaWeights[w];
+				}
+				p++;
+			}
+		}
+		rowStart[size] = p;
+		batchGradients = dense.batchGradients.clone();
+		depth = dense.depth.clone();
+		if ( dense.optimizer != null )
+			setOptimizer(dense.optimizer);
+	}
+
+	SparseLayer() {
+	}
+
+	/**
+	 * @return dense layer with the same weights and training state
+	 */
+	Layer toDense() {
+		Layer l = dense();
+		if ( deltaWeights != null ) {
+			l.prepareTraining();
+			for (int j=0; j<size; j++) {
+				for (int p=rowStart[j]; p<rowStart[j + 1]; p++) {
+					l.deltaWeights[j * stride + columns[p]] = deltaWeights[p];
+					l.totalDeltaWeights[j * stride + columns[p]] = totalDeltaWeights[p];
+				}
+			}
+		}
+		l.batchGradients = batchGradients.clone();
+		if ( optimizer != null )
+			l.setOptimizer(optimizer);
+		return l;
+	}
+
+	@Override
+	Layer dense() {
+		Layer l = new Layer();
+		copyParameters(l);
+		l.allocate();
+		l.mask = new boolean[size * stride];
+		for (int j=0; j<size; j++) {
+			for (int p=rowStart[j]; p<rowStart[j + 1]; p++) {
+				l.weights[j * stride + columns[p]] = weights[p];
+				l.mask[j * stride + columns[p]] = true;
+			}
+		}
+		l.depth = depth.clone();
+		return l;
+	}
+
+	@Override
+	Layer withLayout() {
+		return ( suitsSparse() ? this : toDense() );
+	}
+
+	@Override
+	Layer withPrecision(int precision) {
+		return ( precision == PRECISION_DOUBLE ? this : dense().withPrecision(precision) );
+	}
+
+	@Override
+	Layer copyStructure() {
+		SparseLayer l = new SparseLayer();
+		copyParameters(l);
+		// structure arrays are replaced rather than modified, so they can be shared
+		l.rowStart = rowStart;
+		l.columns = columns;
+		l.weights = new double[weights.length];
+		l.batchGradients = new double[size];
+		l.depth = depth.clone();
+		l.randomize();
+		return l;
+	}
+
+	/**
+	 * Binary search within row of neuron j, so edge lookup takes time logarithmic in its connection count
+	 * @return position of weight of neuron j from source column i, or negative if not connected
+	 */
+	int find(int j, int i) {
+		return Arrays.binarySearch(columns, rowStart[j], rowStart[j + 1], i);
+	}
+
+	@Override
+	double getWeight(int w) {
+		int p = find(w / stride, w % stride);
+		return ( p >= 0 ? weights[p] : 0D );
+	}
+
+	@Override
+	void setWeight(int w, double value) {
+		int p = find(w / stride, w % stride);
+		if ( p >= 0 )
+			weights[p] = value;
+	}
+
+	@Override
+	void setOptimizer(Optimizer o) {
+		optimizer = ( o != null ? o.create(weights.length, PRECISION_DOUBLE) : null );
+	}
+
+	@Override
+	void compute(double[] units, double[] derivatives, int from, int to) {
+		for (int j=from; j<to; j++) {
+			int bias = rowStart[j + 1] - 1;
+			double t = weights[bias] + Kernels.INSTANCE.sparseDot(weights, rowStart[j], bias, columns, units, srcFrom);
+			double y = activate(t);
+			units[firstUnit + j] = y;
+			if ( derivatives != null )
+				derivatives[firstUnit + j] = derivative(y);
+		}
+	}
+
+	@Override
+	void computeBatch(double[] units, int unitCount, int count, double[] sums) {
+		// each row is used for the whole batch while its weights are in cache
+		int[] order = ( readsSelf() ? schedule() : null );
+		for (int k=0; k<size; k++) {
+			int j = ( order != null ? order[k] : k );
+			int bias = rowStart[j + 1] - 1;
+			for (int s=0; s<count; s++) {
+				int in = s * unitCount;
+				double t = weights[bias] + Kernels.INSTANCE.sparseDot(weights, rowStart[j], bias, columns, units, in + srcFrom);
+				units[in + firstUnit + j] = activate(t);
+			}
+		}
+	}
+
+	@Override
+	void backpropagate(double[] gradients, double[] errors) {
+		for (int j=0; j<size; j++) {
+			Kernels.INSTANCE.sparseAxpy(gradients[firstUnit + j], weights, rowStart[j], rowStart[j + 1] - 1, columns, errors, srcFrom);
+		}
+	}
+
+	@Override
+	void backpropagate(int j, double gradient, double[] errors, int fromUnit) {
+		int bias = rowStart[j + 1] - 1;
+		int from = Arrays.binarySearch(columns, rowStart[j], bias, Math.max(0, fromUnit - srcFrom));
+		Kernels.INSTANCE.sparseAxpy(gradient, weights, ( from >= 0 ? from : -from - 1 ), bias, columns, errors, srcFrom);
+	}
+
+	@Override
+	void adjustWeights(int j, double gradient, double[] units, double learningRate, double momentum) {
+		prepareTraining();
+		batchGradients[j] += gradient;
+		if ( optimizer != null ) {
+			adjustGradients(j, gradient, units, learningRate);
+			return;
+		}
+		if ( trainingMode == Neuron.TRAINING_MODE_BATCH_GRADIENT )
+			return;
+
+		double k = learningRate * gradient;
+		int bias = rowStart[j + 1] - 1;
+		if ( trainingMode == Neuron.TRAINING_MODE_BATCH ) {
+			Kernels.INSTANCE.gatherAxpy(k, units, srcFrom, columns, totalDeltaWeights, rowStart[j], bias);
+			totalDeltaWeights[bias] += k;
+			return;
+		}
+		Kernels.INSTANCE.sparseAdjust(k, units, srcFrom, columns, deltaWeights, weights, rowStart[j], bias, momentum);
+		double deltaW = k + deltaWeights[bias] * momentum;
+		deltaWeights[bias] = deltaW;
+		weights[bias] += deltaW;
+	}
+
+	@Override
+	void adjustGradients(int j, double gradient, double[] units, double learningRate) {
+		int from = rowStart[j], bias = rowStart[j + 1] - 1;
+		if ( !stepsPerSample() ) {
+			Kernels.INSTANCE.gatherAxpy(gradient, units, srcFrom, columns, totalDeltaWeights, from, bias);
+			totalDeltaWeights[bias] += gradient;
+			return;
+		}
+		int n = bias + 1 - from;
+		if ( rowGradients == null || rowGradients.length < n )
+			rowGradients = new double[n];
+		for (int p=from; p<bias; p++) {
+			rowGradients[p - from] = gradient * units[srcFrom + columns[p]];
+		}
+		rowGradients[n - 1] = gradient;
+		optimizer.step(weights, from, rowGradients, 0, n, learningRate);
+	}
+
+	@Override
+	void commitWeights(double[] units, double learningRate, double momentum) {
+		prepareTraining();
+		if ( optimizer != null ) {
+			if ( !stepsPerSample() )
+				commitGradients(learningRate);
+			Arrays.fill(batchGradients, 0D);
+			return;
+		}
+		for (int j=0; j<size; j++) {
+			if ( trainingMode != Neuron.TRAINING_MODE_STOCHASTIC ) {
+				double k = learningRate * batchGradients[j];
+				int bias = rowStart[j + 1] - 1;
+				for (int p=rowStart[j]; p<=bias; p++) {
+					double input = ( p == bias ? 1D : units[srcFrom + columns[p]] );
+					double deltaW = ( trainingMode == Neuron.TRAINING_MODE_BATCH ? totalDeltaWeights[p] : k * input ) + deltaWeights[p] * momentum;
+					deltaWeights[p] = deltaW;
+					weights[p] += deltaW;
+					totalDeltaWeights[p] = 0D;
+				}
+			}
+			batchGradients[j] = 0D;
+		}
+	}
+
+	@Override
+	Layer view(boolean accumulators) {
+		prepareTraining();
+		SparseLayer l = new SparseLayer();
+		copyParameters(l);
+		l.rowStart = rowStart;
+		l.columns = columns;
+		l.weights = weights;
+		l.deltaWeights = deltaWeights;
+		l.optimizer = ( optimizer != null ? optimizer.view() : null );
+		l.depth = depth;
+		l.order = order;
+		l.waves = waves;
+		l.totalDeltaWeights = ( accumulators ? new double[weights.length] : totalDeltaWeights );
+		l.batchGradients = ( accumulators ? new double[size] : batchGradients );
+		return l;
+	}
+
+	@Override
+	boolean isConnected(int j, int unit) {
+		if ( unit < srcFrom || unit >= srcFrom + fanIn )
+			return false;
+		return ( find(j, unit - srcFrom) >= 0 );
+	}
+
+	@Override
+	boolean connect(int j, int unit) {
+		if ( isConnected(j, unit) )
+			return false;
+		if ( unit < srcFrom || unit >= srcFrom + fanIn ) {
+			int from = Math.min(srcFrom, unit);
+			int to = Math.max(srcFrom + fanIn, unit + 1);
+			reshape(size, from, to - from);
+		}
+		int p = -find(j, unit - srcFrom) - 1;
+		int[] newRowStart = rowStart.clone();
+		for (int k=j+1; k<=size; k++) {
+			newRowStart[k]++;
+		}
+		rowStart = newRowStart;
+		columns = insert(columns, p, unit - srcFrom);
+		weights = insert(weights, p, randomWeight());
+		if ( deltaWeights != null ) {
+			deltaWeights = insert(deltaWeights, p, 0D);
+			totalDeltaWeights = insert(totalDeltaWeights, p, 0D);
+		}
+		order = null;
+		// optimizer state is indexed by position, which has moved
+		if ( optimizer != null )
+			setOptimizer(optimizer);
+		return true;
+	}
+
+	private static int[] insert(int[] a, int p, int value) {
+		int[] b = new int[a.length + 1];
+		System.arraycopy(a, 0, b, 0, p);
+		b[p] = value;
+		System.arraycopy(a, p, b, p + 1, a.length - p);
+		return b;
+	}
+
+	private static double[] insert(double[] a, int p, double value) {
+		double[] b = new double[a.length + 1];
+		System.arraycopy(a, 0, b, 0, p);
+		b[p] = value;
+		System.arraycopy(a, p, b, p + 1, a.length - p);
+		return b;
+	}
+
+	@Override
+	int addNeuron(int from, int to) {
+		int j = size;
+		reshape(size + 1, srcFrom, fanIn);
+		weights[rowStart[j]] = randomWeight();
+		for (int unit=from; unit<to; unit++) {
+			if ( unit >= srcFrom && unit < srcFrom + fanIn )
+				connect(j, unit);
+		}
+		return j;
+	}
+
+	/**
+	 * Moves columns to new source window. New neurons get only a bias weight, set to zero
+	 */
+	@Override
+	void reshape(int newSize, int newSrcFrom, int newFanIn) {
+		int shift = srcFrom - newSrcFrom;
+		int[] newColumns = Arrays.copyOf(columns, columns.length + newSize - size);
+		for (int p=0; p<columns.length; p++) {
+			newColumns[p] = ( columns[p] == fanIn ? newFanIn : columns[p] + shift );
+		}
+		int[] newRowStart = Arrays.copyOf(rowStart, newSize + 1);
+		for (int j=size+1; j<=newSize; j++) {
+			newRowStart[j] = newRowStart[j - 1] + 1;
+			newColumns[newRowStart[j] - 1] = newFanIn;
+		}
+		int n = newColumns.length;
+		columns = newColumns;
+		rowStart = newRowStart;
+		weights = Arrays.copyOf(weights, n);
+		if ( deltaWeights != null ) {
+			deltaWeights = Arrays.copyOf(deltaWeights, n);
+			totalDeltaWeights = Arrays.copyOf(totalDeltaWeights, n);
+		}
+		batchGradients = Arrays.copyOf(batchGradients, newSize);
+		depth = Arrays.copyOf(depth, newSize);
+		order = null;
+		size = newSize;
+		srcFrom = newSrcFrom;
+		fanIn = newFanIn;
+		stride = newFanIn + 1;
+		if ( optimizer != null )
+			setOptimizer(optimizer);
+	}
+
+	@Override
+	public int getConnectionCount() {
+		return weights.length;
+	}
+
+}
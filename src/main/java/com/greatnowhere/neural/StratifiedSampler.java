@@ -0,0 +1,86 @@
+package com.greatnowhere.neural;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+/**
+ * Balances classes, samples of equal expected output, so each class makes up the same share of an epoch.
+ * Epoch has as many samples as the training data. Each class is visited in its own shuffled cycle,
+ * continued by the next epoch, so samples of a large class are all visited within a few epochs and
+ * samples of a small class are repeated
+ * @author pzeltins
+ *
+ */
+public class StratifiedSampler implements Sampler {
+
+	SplittableRandom r;
+	int[] order = new int[0];
+	/**
+	 * sample indexes of each class, and position of the next sample of each class
+	 */
+	int[][] classes;
+	int[] positions;
+	TrainingData data;
+
+	public StratifiedSampler() {
+		r = new SplittableRandom();
+	}
+
+	public StratifiedSampler(long seed) {
+		r = new SplittableRandom(seed);
+	}
+
+	@Override
+	public int[] next(TrainingData data) {
+		if ( this.data != data || order.length != data.size() )
+			classify(data);
+		int n = order.length;
+		for (int i=0; i<n; i++) {
+			// classes take turns, remainder goes to first classes
+			int c = i % classes.length;
+			int[] members = classes[c];
+			if ( positions[c] == members.length ) {
+				UniformSampler.shuffle(members, members.length, r);
+				positions[c] = 0;
+			}
+			order[i] = members[positions[c]++];
+		}
+		UniformSampler.shuffle(order, n, r);
+		return order;
+	}
+
+	void classify(TrainingData data) {
+		Map<Double, List<Integer>> byTarget = new LinkedHashMap<>();
+		for (int i=0; i<data.size(); i++) {
+			byTarget.computeIfAbsent(data.target(i), t -> new ArrayList<>()).add(i);
+		}
+		classes = new int[byTarget.size()][];
+		int c = 0;
+		for (List<Integer> members : byTarget.values() ) {
+			classes[c] = new int[members.size()];
+			for (int i=0; i<classes[c].length; i++) {
+				classes[c][i] = members.get(i);
+			}
+			c++;
+		}
+		positions = new int[classes.length];
+		for (int i=0; i<classes.length; i++) {
+			positions[i] = classes[i].length;
+		}
+		order = new int[data.size()];
+		this.data = data;
+	}
+
+	@Override
+	public void trained(int index, double error) {
+	}
+
+	@Override
+	public Sampler copy() {
+		return new StratifiedSampler(r.nextLong());
+	}
+
+}
@@ -0,0 +1,44 @@
+package com.greatnowhere.neural;
+
+/**
+ * Samples a network is trained on, accessed by index so that epochs can visit them in shuffled order
+ * without moving the samples themselves
+ * @author pzeltins
+ *
+ */
+public interface TrainingData {
+
+	/**
+	 * @return number of samples
+	 */
+	int size();
+
+	/**
+	 * Sets network input values to those of a sample. Must be safe to call from several threads at once
+	 * @param index
+	 * @param n
+	 * @return expected output of the sample
+	 */
+	double load(int index, Network n);
+
+	/**
+	 * Sets network input values to those of a sample and stores its expected outputs. 
+	 * Default implementation serves samples with a single expected output
+	 * @param index
+	 * @param n
+	 * @param targets receives expected outputs, has one element per network output
+	 * @return number of expected outputs stored, outputs beyond it are not trained
+	 */
+	default int load(int index, Network n, double[] targets) {
+		targets[0] = load(index, n);
+		return 1;
+	}
+
+	/**
+	 * Expected output of a sample without loading it, used by samplers that group samples by class
+	 * @param index
+	 * @return expected output of the sample
+	 */
+	double target(int index);
+
+}
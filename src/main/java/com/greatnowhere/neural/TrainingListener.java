@@ -0,0 +1,18 @@
+package com.greatnowhere.neural;
+
+/**
+ * Receives statistics of each training epoch, see Network.addTrainingListener.
+ * Herd specimens train concurrently and share listeners of the network they are copied from,
+ * so listeners may be called from several threads at once
+ * @author pzeltins
+ *
+ */
+public interface TrainingListener {
+
+	/**
+	 * Called after an epoch is committed
+	 * @param stats
+	 */
+	void epochFinished(EpochStats stats);
+
+}
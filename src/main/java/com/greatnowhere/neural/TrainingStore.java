@@ -0,0 +1,279 @@
+package com.greatnowhere.neural;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Training samples stored in a file and read through memory mappings, so datasets do not
+ * have to fit in the heap. All values are little-endian:
+ * <pre>
+ * int    magic "NNDS", version, inputs, reserved
+ * long   number of samples, offset of labels
+ * sample records:
+ *   float  inputs, expected output
+ *   int    label number, -1 if sample has no label
+ * labels:
+ *   int    length, UTF-8 bytes
+ * </pre>
+ * Records are mapped in chunks of whole records below 2 GB each, so files of any size can be used
+ * @author pzeltins
+ *
+ */
+public class TrainingStore implements TrainingData {
+
+	static final int MAGIC = 0x53444E4E; // "NNDS" when read as little-endian bytes
+	static final int VERSION = 1;
+	static final int HEADER_SIZE = 32;
+	/**
+	 * size of write buffer
+	 */
+	static final int WRITE_BUFFER = 1 << 20;
+
+	int inputs;
+	int size;
+	/**
+	 * record length in floats
+	 */
+	int stride;
+	int recordsPerChunk;
+	FloatBuffer[] chunks;
+	/**
+	 * same mappings as chunks, used to read label numbers
+	 */
+	IntBuffer[] intChunks;
+	ByteBuffer labelBuffer;
+	/**
+	 * positions of labels in labelBuffer, found on first use
+	 */
+	int[] labelOffsets;
+
+	private TrainingStore() {
+	}
+
+	/**
+	 * Creates new dataset file, replacing existing one
+	 * @param path
+	 * @param inputs number of inputs of each sample
+	 * @return writer samples are added to, store is complete once writer is closed
+	 * @throws IOException
+	 */
+	public static Writer create(Path path, int inputs) throws IOException {
+		return new Writer(path, inputs);
+	}
+
+	/**
+	 * Opens dataset file written by create()
+	 * @param path
+	 * @return
+	 * @throws IOException if file is not a dataset file or is of unsupported version
+	 */
+	public static TrainingStore open(Path path) throws IOException {
+		try ( FileChannel ch = FileChannel.open(path, StandardOpenOption.READ) ) {
+			ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+			while ( header.hasRemaining() && ch.read(header) >= 0 );
+			header.flip();
+			if ( header.remaining() < HEADER_SIZE || header.getInt() != MAGIC )
+				throw new IOException("not a dataset file");
+			int version = header.getInt();
+			if ( version < 1 || version > VERSION )
+				throw new IOException("unsupported dataset file version " + version);
+			TrainingStore s = new TrainingStore();
+			s.inputs = header.getInt();
+			header.getInt();
+			long count = header.getLong();
+			long labelsOffset = header.getLong();
+			if ( count > Integer.MAX_VALUE )
+				throw new IOException("too many samples " + count);
+			s.size = (int) count;
+			s.stride = s.inputs + 2;
+			long recordSize = 4L * s.stride;
+			s.recordsPerChunk = (int) Math.max(1, Integer.MAX_VALUE / recordSize);
+			s.chunks = new FloatBuffer[( s.size + s.recordsPerChunk - 1 ) / s.recordsPerChunk];
+			s.intChunks = new IntBuffer[s.chunks.length];
+			for (int c=0; c<s.chunks.length; c++) {
+				long first = (long) c * s.recordsPerChunk;
+				long records = Math.min(s.recordsPerChunk, s.size - first);
+				ByteBuffer b = ch.map(FileChannel.MapMode.READ_ONLY, HEADER_SIZE + first * recordSize, records * recordSize)
+						.order(ByteOrder.LITTLE_ENDIAN);
+				s.chunks[c] = b.asFloatBuffer();
+				s.intChunks[c] = b.asIntBuffer();
+			}
+			long labelsSize = ch.size() - labelsOffset;
+			if ( labelsSize > Integer.MAX_VALUE )
+				throw new IOException("labels too large");
+			s.labelBuffer = ch.map(FileChannel.MapMode.READ_ONLY, labelsOffset, labelsSize).order(ByteOrder.LITTLE_ENDIAN);
+			return s;
+		}
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @return number of inputs of each sample
+	 */
+	public int getInputs() {
+		return inputs;
+	}
+
+	@Override
+	public double load(int index, Network n) {
+		if ( n.inputLayerSize != inputs )
+			throw new IllegalArgumentException("network has " + n.inputLayerSize + " inputs, dataset has " + inputs);
+		// input units come first
+		return read(index, n.units);
+	}
+
+	/**
+	 * Copies inputs of a sample
+	 * @param index
+	 * @param v receives inputs at its beginning
+	 * @return expected output of the sample
+	 */
+	public double read(int index, double[] v) {
+		FloatBuffer b = chunks[index / recordsPerChunk];
+		int pos = ( index % recordsPerChunk ) * stride;
+		for (int i=0; i<inputs; i++) {
+			v[i] = b.get(pos + i);
+		}
+		return b.get(pos + inputs);
+	}
+
+	@Override
+	public double target(int index) {
+		return chunks[index / recordsPerChunk].get(( index % recordsPerChunk ) * stride + inputs);
+	}
+
+	/**
+	 * @param index
+	 * @return label of a sample, or null
+	 */
+	public String getLabel(int index) {
+		int label = intChunks[index / recordsPerChunk].get(( index % recordsPerChunk ) * stride + inputs + 1);
+		if ( label < 0 )
+			return null;
+		int offset = labelOffsets()[label];
+		int length = labelBuffer.getInt(offset);
+		byte[] bytes = new byte[length];
+		ByteBuffer l = labelBuffer.duplicate();
+		l.position(offset + 4);
+		l.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	private synchronized int[] labelOffsets() {
+		if ( labelOffsets == null ) {
+			ArrayList<Integer> offsets = new ArrayList<>();
+			for (int pos=0; pos<labelBuffer.limit(); pos+=4+labelBuffer.getInt(pos)) {
+				offsets.add(pos);
+			}
+			labelOffsets = new int[offsets.size()];
+			for (int i=0; i<labelOffsets.length; i++) {
+				labelOffsets[i] = offsets.get(i);
+			}
+		}
+		return labelOffsets;
+	}
+
+	/**
+	 * Appends samples to a new dataset file
+	 * @author pzeltins
+	 *
+	 */
+	public static class Writer implements Closeable {
+
+		FileChannel ch;
+		int inputs;
+		long count;
+		ByteBuffer buf;
+		List<byte[]> labels = new ArrayList<>();
+
+		Writer(Path path, int inputs) throws IOException {
+			this.inputs = inputs;
+			ch = FileChannel.open(path, StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+			buf = ByteBuffer.allocateDirect(Math.max(WRITE_BUFFER, 4 * ( inputs + 2 ))).order(ByteOrder.LITTLE_ENDIAN);
+			// header is rewritten on close
+			buf.put(new byte[HEADER_SIZE]);
+		}
+
+		/**
+		 * Adds a sample, inputs are stored as floats
+		 * @param v inputs
+		 * @param output expected output
+		 * @param label can be null
+		 * @throws IOException
+		 */
+		public void add(double[] v, double output, String label) throws IOException {
+			if ( v.length != inputs )
+				throw new IllegalArgumentException("expected " + inputs + " inputs, got " + v.length);
+			if ( buf.remaining() < 4 * ( inputs + 2 ) )
+				flush();
+			for (int i=0; i<inputs; i++) {
+				buf.putFloat((float) v[i]);
+			}
+			buf.putFloat((float) output);
+			if ( label != null ) {
+				buf.putInt(labels.size());
+				labels.add(label.getBytes(StandardCharsets.UTF_8));
+			} else {
+				buf.putInt(-1);
+			}
+			count++;
+		}
+
+		private void flush() throws IOException {
+			buf.flip();
+			while ( buf.hasRemaining() ) {
+				ch.write(buf);
+			}
+			buf.clear();
+		}
+
+		/**
+		 * Writes labels and header, and closes the file
+		 */
+		@Override
+		public void close() throws IOException {
+			try {
+				long labelsOffset = HEADER_SIZE + count * 4L * ( inputs + 2 );
+				for (byte[] l : labels ) {
+					if ( buf.remaining() < 4 + l.length )
+						flush();
+					if ( buf.remaining() < 4 + l.length ) {
+						// label larger than buffer
+						buf.putInt(l.length);
+						flush();
+						ByteBuffer b = ByteBuffer.wrap(l);
+						while ( b.hasRemaining() ) {
+							ch.write(b);
+						}
+						continue;
+					}
+					buf.putInt(l.length).put(l);
+				}
+				flush();
+				buf.putInt(MAGIC).putInt(VERSION).putInt(inputs).putInt(0).putLong(count).putLong(labelsOffset);
+				buf.flip();
+				while ( buf.hasRemaining() ) {
+					ch.write(buf, buf.position());
+				}
+			} finally {
+				ch.close();
+			}
+		}
+
+	}
+
+}
@@ -0,0 +1,58 @@
+package com.greatnowhere.neural;
+
+import java.util.SplittableRandom;
+
+/**
+ * Visits every sample once per epoch in random order, shuffling an index array in place (Fisher-Yates)
+ * @author pzeltins
+ *
+ */
+public class UniformSampler implements Sampler {
+
+	SplittableRandom r;
+	int[] order = new int[0];
+
+	public UniformSampler() {
+		r = new SplittableRandom();
+	}
+
+	/**
+	 * @param seed makes the order of epochs repeatable
+	 */
+	public UniformSampler(long seed) {
+		r = new SplittableRandom(seed);
+	}
+
+	@Override
+	public int[] next(TrainingData data) {
+		if ( order.length != data.size() ) {
+			order = new int[data.size()];
+			for (int i=0; i<order.length; i++) {
+				order[i] = i;
+			}
+		}
+		// any arrangement shuffles into a uniformly random permutation, so previous order is shuffled again
+		shuffle(order, order.length, r);
+		return order;
+	}
+
+	/**
+	 * Shuffles first n elements of array
+	 */
+	static void shuffle(int[] a, int n, SplittableRandom r) {
+		for (int i=n-1; i>0; i--) {
+			int j = r.nextInt(i + 1);
+			int t = a[i]; a[i] = a[j]; a[j] = t;
+		}
+	}
+
+	@Override
+	public void trained(int index, double error) {
+	}
+
+	@Override
+	public Sampler copy() {
+		return new UniformSampler(r.nextLong());
+	}
+
+}
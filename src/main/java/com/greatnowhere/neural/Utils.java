@@ -2,9 +2,13 @@ package com.greatnowhere.neural;
 
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
 import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 public class Utils {
 
@@ -22,10 +26,12 @@ public class Utils {
 	}
 	
 	/**
-	 * fast sigmoid approximation, MAD = 0.02
+	 * crude sigmoid approximation, max error 0.27 near x = +-1
 	 * @param x
 	 * @return
+	 * @deprecated use Activation.sigmoid with Layer.ACTIVATION_MODE_TABLE or ACTIVATION_MODE_RATIONAL
 	 */
+	@Deprecated
 	public static double sigmoid_approx(double x) {
 		if ( x > 1D ) return 1;
 		if ( x < -1D ) return 0;
@@ -74,6 +80,10 @@ public class Utils {
 	}
 	
 	
+	/**
+	 * @deprecated see RpropOptimizer
+	 */
+	@Deprecated
 	public static double computeRpropUpdateCoeff(double previousUpdate,double currentUpdate) {
 		switch ( (int)Math.signum(currentUpdate * previousUpdate) ) {
 		case -1: // sign change
@@ -85,43 +95,206 @@ public class Utils {
 		}
 	}
 	
+	/**
+	 * @deprecated compared step sizes rather than gradients, see RpropOptimizer
+	 */
+	@Deprecated
 	public static double getRpropUpdateValue(double updateValue, double prevUpdateValue,double currUpdateValue) {
 		updateValue *= Utils.computeRpropUpdateCoeff(prevUpdateValue, currUpdateValue);
-		updateValue = Math.min(Connection.MAX_RPROP_UPDATE_VALUE, Math.abs(updateValue)) * Math.signum(updateValue);
-		updateValue = Math.max(Connection.MIN_RPROP_UPDATE_VALUE, Math.abs(updateValue)) * Math.signum(updateValue);
+		updateValue = Math.min(Layer.MAX_RPROP_UPDATE_VALUE, Math.abs(updateValue)) * Math.signum(updateValue);
+		updateValue = Math.max(Layer.MIN_RPROP_UPDATE_VALUE, Math.abs(updateValue)) * Math.signum(updateValue);
 		return updateValue;
 	}
 	
+	/**
+	 * Runs a single training epoch over whole training set. If network has more than one training thread,
+	 * samples are split between threads
+	 * @param n
+	 * @param trainingSet
+	 * @param learningRate
+	 * @param momentum
+	 * @param errorMargin
+	 * @param persistenceFilePath network is checkpointed here in background, see Network.setCheckpointInterval
+	 * @return success rate
+	 * @throws InterruptedException
+	 * @throws IOException
+	 */
 	public static double train(Network n, List<TrainingSet> trainingSet,
 			double learningRate, double momentum, double errorMargin,
 			String persistenceFilePath) throws InterruptedException, IOException {
+		return train(n, new TrainingList(trainingSet), learningRate, momentum, errorMargin, persistenceFilePath);
+	}
+	
+	/**
+	 * Runs a single training epoch over whole training data, see train(Network, List, ...)
+	 * Samples are chosen and ordered by network's sampler, training data itself is not modified
+	 * @param n
+	 * @param data
+	 * @param learningRate
+	 * @param momentum
+	 * @param errorMargin
+	 * @param persistenceFilePath
+	 * @return success rate
+	 * @throws InterruptedException
+	 * @throws IOException
+	 */
+	public static double train(Network n, TrainingData data,
+			double learningRate, double momentum, double errorMargin,
+			String persistenceFilePath) throws InterruptedException, IOException {
+		TrainingListener[] listeners = n.listeners;
+		long start = 0L;
+		if ( listeners != null ) {
+			start = System.nanoTime();
+			n.latencies = new LatencyHistogram();
+			n.forwardNanos = 0L;
+			n.backwardNanos = 0L;
+		}
 		n.maxError = 0;
 		n.minError = Double.MAX_VALUE;
 		n.currentIterations = 0;
 		n.right = 0; n.wrong = 0;
-		Collections.sort(trainingSet); //random shuffle
+		int[] order = n.sampler().next(data);
 		n.totalError = 0D;
-		for (TrainingSet t : trainingSet ) {
-			t.order = TrainingSet.r.nextDouble();
-			n.currentIterations++;
-			n.setInputValues(t.inputs);
-			n.compute();
-			t.error = 0.5D * Math.pow( t.output - n.getOutput(), 2 ) ;
-			n.learn(0, t.output, learningRate, momentum);
-			if ( t.error < errorMargin ) n.right++; else n.wrong++;
-			n.minError = ( t.error < n.minError ? t.error : n.minError );
-			n.maxError = ( t.error > n.maxError ? t.error : n.maxError );
-			n.totalError += t.error;
-			n.squareError += Math.pow(t.error, 2);
-			// System.out.print(getStats() + " error " + t.error + "\r");
+		if ( n.getTrainingThreads() > 1 && n.changesPerSample() ) {
+			trainHogwild(n, data, order, learningRate, momentum, errorMargin);
+		} else if ( n.getTrainingThreads() > 1 ) {
+			trainParallel(n, data, order, learningRate, momentum, errorMargin);
+		} else {
+			train(n, data, order, 0, order.length, learningRate, momentum, errorMargin);
 		}
+		long commitStart = ( listeners != null ? System.nanoTime() : 0L );
 		n.commitChanges(learningRate,momentum);
+		long commitNanos = ( listeners != null ? System.nanoTime() - commitStart : 0L );
+		n.successRate = new Double(n.right) / new Double(order.length); 
 		if ( persistenceFilePath != null )
-			n.persistToFile(persistenceFilePath);
-		n.successRate = new Double(n.right) / new Double(trainingSet.size()); 
+			n.checkpointer(persistenceFilePath).epochFinished(n);
+		n.epochs++;
+		if ( listeners != null ) {
+			EpochStats stats = new EpochStats(n, order.length, System.nanoTime() - start, commitNanos);
+			n.latencies = null;
+			for (TrainingListener l : listeners ) {
+				l.epochFinished(stats);
+			}
+		}
 		return n.successRate;
 	}
 	
+	/**
+	 * Trains samples order[from] (inclusive) to order[to] (exclusive), without committing batch changes
+	 */
+	static void train(Network n, TrainingData data, int[] order, int from, int to,
+			double learningRate, double momentum, double errorMargin) {
+		for (int i=from; i<to; i++) {
+			train(n, data, order[i], learningRate, momentum, errorMargin);
+		}
+	}
+	
+	/**
+	 * Trains single sample, without committing batch changes
+	 */
+	static void train(Network n, TrainingData data, int index, double learningRate, double momentum, double errorMargin) {
+		n.currentIterations++;
+		double[] targets = n.targets;
+		int count = data.load(index, n, targets);
+		LatencyHistogram latencies = n.latencies;
+		long start = ( latencies != null ? System.nanoTime() : 0L );
+		n.forward();
+		long forwardEnd = ( latencies != null ? System.nanoTime() : 0L );
+		double error = 0D;
+		for (int j=0; j<count; j++) {
+			error += 0.5D * Math.pow( targets[j] - n.getOutput(j), 2 );
+		}
+		n.learn(targets, count, learningRate, momentum);
+		if ( latencies != null ) {
+			long end = System.nanoTime();
+			n.forwardNanos += forwardEnd - start;
+			n.backwardNanos += end - forwardEnd;
+			latencies.record(end - start);
+		}
+		if ( error < errorMargin ) n.right++; else n.wrong++;
+		n.sampler().trained(index, error);
+		n.minError = ( error < n.minError ? error : n.minError );
+		n.maxError = ( error > n.maxError ? error : n.maxError );
+		n.totalError += error;
+		n.squareError += Math.pow(error, 2);
+	}
+	
+	/**
+	 * Lock-free parallel stochastic training (Hogwild). Worker threads take samples one by one 
+	 * and apply their updates directly to shared weights. Updates of different threads may overwrite 
+	 * each other occasionally, which does not harm convergence as each update is small
+	 */
+	private static void trainHogwild(final Network n, final TrainingData data, final int[] order,
+			final double learningRate, final double momentum, final double errorMargin) {
+		final int threads = Math.min(n.getTrainingThreads(), Math.max(1, order.length));
+		final Network[] workers = new Network[threads];
+		final AtomicInteger next = new AtomicInteger();
+		ForkJoinTask<?>[] tasks = new ForkJoinTask<?>[threads];
+		for (int i=0; i<threads; i++) {
+			final Network w = n.worker(false);
+			workers[i] = w;
+			tasks[i] = ForkJoinTask.adapt(() -> {
+				int s;
+				while ( ( s = next.getAndIncrement() ) < order.length ) {
+					train(w, data, order[s], learningRate, momentum, errorMargin);
+				}
+			});
+		}
+		invokeAll(n.pool, tasks);
+		for (Network w : workers ) {
+			n.accumulateStats(w);
+		}
+	}
+	
+	/**
+	 * Splits training set into contiguous shares, one per training thread. Each worker accumulates 
+	 * batch changes of its share, workers are then summed pairwise so results do not depend on thread timing
+	 */
+	private static void trainParallel(final Network n, final TrainingData data, final int[] order,
+			final double learningRate, final double momentum, final double errorMargin) {
+		final int threads = Math.min(n.getTrainingThreads(), Math.max(1, order.length));
+		final Network[] workers = new Network[threads];
+		ForkJoinTask<?>[] tasks = new ForkJoinTask<?>[threads];
+		for (int i=0; i<threads; i++) {
+			final Network w = n.worker(true);
+			final int from = order.length * i / threads;
+			final int to = order.length * (i + 1) / threads;
+			workers[i] = w;
+			tasks[i] = ForkJoinTask.adapt(() -> train(w, data, order, from, to, learningRate, momentum, errorMargin));
+		}
+		invokeAll(n.pool, tasks);
+		
+		// tree reduction, pairs of workers at increasing distance
+		for (int step=1; step<threads; step*=2) {
+			ArrayList<ForkJoinTask<?>> level = new ArrayList<>();
+			for (int i=0; i+step<threads; i+=2*step) {
+				final Network a = workers[i], b = workers[i + step];
+				level.add(ForkJoinTask.adapt(() -> a.accumulate(b)));
+			}
+			invokeAll(n.pool, level.toArray(new ForkJoinTask<?>[level.size()]));
+		}
+		n.accumulate(workers[0]);
+		// batch gradient mode commits using unit values of the last sample
+		Network last = workers[threads - 1];
+		System.arraycopy(last.units, 0, n.units, 0, n.units.length);
+	}
+	
+	/**
+	 * Runs first task on the caller thread and the rest on the pool, waiting until all are done
+	 * @param pool
+	 * @param tasks
+	 */
+	static void invokeAll(ForkJoinPool pool, ForkJoinTask<?>[] tasks) {
+		for (int i=1; i<tasks.length; i++) {
+			pool.execute(tasks[i]);
+		}
+		if ( tasks.length > 0 )
+			tasks[0].invoke();
+		for (int i=1; i<tasks.length; i++) {
+			tasks[i].join();
+		}
+	}
+	
 	/**
 	 * Runs training cycles until error falls below maxError, and number of training cycles are less than maxIterations
 	 * Returns true if error fell below the threshold
@@ -137,17 +310,46 @@ public class Utils {
 			double learningRate, double momentum, double errorMargin,
 			String persistenceFilePath, int maxIterations, double successRate,
 			boolean printProgress) throws InterruptedException, IOException {
+		return trainCycle(n, new TrainingList(trainingSet), learningRate, momentum, errorMargin, persistenceFilePath, 
+				maxIterations, successRate, printProgress, null);
+	}
+	
+	/**
+	 * Runs training cycles over training data, see trainCycle(Network, List, ...)
+	 */
+	public static boolean trainCycle(Network n, TrainingData data,
+			double learningRate, double momentum, double errorMargin,
+			String persistenceFilePath, int maxIterations, double successRate,
+			boolean printProgress) throws InterruptedException, IOException {
+		return trainCycle(n, data, learningRate, momentum, errorMargin, persistenceFilePath, 
+				maxIterations, successRate, printProgress, null);
+	}
+	
+	/**
+	 * Runs training cycles, stopping early once cancelled flag is set
+	 * @param cancelled can be null
+	 */
+	static boolean trainCycle(Network n, TrainingData data,
+			double learningRate, double momentum, double errorMargin,
+			String persistenceFilePath, int maxIterations, double successRate,
+			boolean printProgress, AtomicBoolean cancelled) throws InterruptedException, IOException {
 		
-		int c=0;
-		do {
-			
-			train(n, trainingSet, learningRate, momentum, errorMargin, persistenceFilePath);
-			if ( printProgress ) {
-				System.out.println("success rate " + n.successRate + " error " + n.totalError);
-				System.out.println(n.toString());
-			}
-			
-		} while ( n.successRate < successRate && c++ < maxIterations );
+		TrainingListener log = ( printProgress ? new LogListener(System.out) : null );
+		if ( log != null )
+			n.addTrainingListener(log);
+		try {
+			int c=0;
+			do {
+				
+				train(n, data, learningRate, momentum, errorMargin, persistenceFilePath);
+				
+			} while ( n.successRate < successRate && c++ < maxIterations && ( cancelled == null || !cancelled.get() ) );
+		} finally {
+			if ( log != null )
+				n.removeTrainingListener(log);
+		}
+		if ( persistenceFilePath != null )
+			n.flushCheckpoint();
 
 		return ( n.successRate >= successRate );
 		
@@ -168,28 +370,37 @@ public class Utils {
 			double learningRate, double momentum, double errorMargin,
 			String persistenceFilePath, int numSpecimens, int maxIterations, 
 			int maxGenerations, double successRate,	boolean printProgress) throws InterruptedException, IOException {
-		
-		ArrayList<Network> generation = new ArrayList<>();
+		return trainGenetic(n, new TrainingList(trainingSet), learningRate, momentum, errorMargin, persistenceFilePath, 
+				numSpecimens, maxIterations, maxGenerations, successRate, printProgress);
+	}
+	
+	/**
+	 * Genetic selection of networks trained on training data, see trainGenetic(Network, List, ...)
+	 */
+	public static Network trainGenetic(Network n, TrainingData data,
+			double learningRate, double momentum, double errorMargin,
+			String persistenceFilePath, int numSpecimens, int maxIterations, 
+			int maxGenerations, double successRate,	boolean printProgress) throws InterruptedException, IOException {
 		
 		for (int g=0;g<maxGenerations;g++) {
 			// train the best we got so far
-			if ( trainCycle(n,trainingSet,learningRate,momentum,errorMargin,persistenceFilePath, maxIterations, successRate, printProgress) ) {
+			if ( trainCycle(n,data,learningRate,momentum,errorMargin,persistenceFilePath, maxIterations, successRate, printProgress) ) {
 				break;
 			}
 			
-			generation.clear();
+			// only the specimen with the lowest error so far is kept, others are dropped once trained
+			Network survivor = null;
 			for ( int i=0; i < numSpecimens; i++) {
 				Network specimen = new Network(n);
 				// introduce random mutations
 				mutateNetwork(specimen); mutateNetwork(specimen);
-				generation.add(specimen);
-				if ( trainCycle(specimen,trainingSet,learningRate,momentum,errorMargin,persistenceFilePath, maxIterations, successRate, printProgress) )
+				boolean trained = trainCycle(specimen,data,learningRate,momentum,errorMargin,persistenceFilePath, maxIterations, successRate, printProgress);
+				if ( survivor == null || specimen.compareTo(survivor) < 0 )
+					survivor = specimen;
+				if ( trained )
 					break;
 			}
-			// first item should be be best network
-			Collections.sort(generation);
-			Network survivor = generation.get(0);
-			if ( survivor.successRate >= successRate ) {
+			if ( survivor != null && survivor.successRate >= successRate ) {
 				n = survivor;
 				break;
 			}
@@ -202,6 +413,7 @@ public class Utils {
 	
 	/**
 	 * Creates numSpecimens networks, trains each separately, and chooses the best one
+	 * Specimens are trained concurrently, one per available processor
 	 * @param n
 	 * @param trainingSet
 	 * @param learningRate
@@ -220,29 +432,97 @@ public class Utils {
 			double learningRate, double momentum, double errorMargin,
 			String persistenceFilePath, int numSpecimens, int maxIterations, 
 			double successRate,	boolean printProgress) throws InterruptedException, IOException {
-		
-		ArrayList<Network> herd = new ArrayList<>();
+		return trainHerd(n, trainingSet, learningRate, momentum, errorMargin, persistenceFilePath, numSpecimens, 
+				maxIterations, successRate, printProgress, Runtime.getRuntime().availableProcessors());
+	}
+	
+	/**
+	 * Creates numSpecimens networks, trains them concurrently on network's pool, and chooses the best one.
+	 * At most maxParallel specimens exist at any time besides the best one so far. Once a specimen reaches
+	 * expected success rate, remaining specimens are cancelled
+	 * @param n
+	 * @param trainingSet
+	 * @param learningRate
+	 * @param momentum
+	 * @param errorMargin
+	 * @param persistenceFilePath best specimen is persisted here once herd is trained
+	 * @param numSpecimens
+	 * @param maxIterations
+	 * @param successRate
+	 * @param printProgress
+	 * @param maxParallel max number of specimens trained at once
+	 * @return
+	 * @throws InterruptedException
+	 * @throws IOException
+	 */
+	public static Network trainHerd(Network n, List<TrainingSet> trainingSet,
+			double learningRate, double momentum, double errorMargin,
+			String persistenceFilePath, int numSpecimens, int maxIterations, 
+			double successRate, boolean printProgress, int maxParallel) throws InterruptedException, IOException {
+		return trainHerd(n, new TrainingList(trainingSet), learningRate, momentum, errorMargin, persistenceFilePath, 
+				numSpecimens, maxIterations, successRate, printProgress, maxParallel);
+	}
+	
+	/**
+	 * Concurrent herd training on training data, see trainHerd(Network, List, ...)
+	 */
+	public static Network trainHerd(final Network n, final TrainingData data,
+			final double learningRate, final double momentum, final double errorMargin,
+			String persistenceFilePath, final int numSpecimens, final int maxIterations, 
+			final double successRate, final boolean printProgress, int maxParallel) throws InterruptedException, IOException {
 		
 		// train what we got so far
-		if ( trainCycle(n,trainingSet,learningRate,momentum,errorMargin,persistenceFilePath, maxIterations, successRate, printProgress) ) {
+		if ( trainCycle(n,data,learningRate,momentum,errorMargin,persistenceFilePath, maxIterations, successRate, printProgress) ) {
 			return n;
 		}
-			
-		herd.clear();
-		for ( int i=0; i < numSpecimens; i++) {
-			Network specimen = new Network(n);
-			herd.add(specimen);
-			if ( trainCycle(specimen,trainingSet,learningRate,momentum,errorMargin,persistenceFilePath, maxIterations, successRate, printProgress) )
-				break;
+		
+		// samplers are copied and connections marked shared on this thread, runners only read the parent
+		n.shareConnections();
+		final Sampler[] samplers = new Sampler[numSpecimens];
+		for (int s=0; s<numSpecimens; s++) {
+			samplers[s] = ( n.sampler != null ? n.sampler.copy() : null );
 		}
-		// first item should be be best network
-		Collections.sort(herd);
-		n = herd.get(0);
-			
-		return n;
+		final AtomicInteger next = new AtomicInteger();
+		final AtomicBoolean done = new AtomicBoolean();
+		final AtomicReference<Network> best = new AtomicReference<>();
+		int runners = Math.max(1, Math.min(maxParallel, numSpecimens));
+		ForkJoinTask<?>[] tasks = new ForkJoinTask<?>[runners];
+		for (int i=0; i<runners; i++) {
+			tasks[i] = ForkJoinTask.adapt(() -> {
+				int s;
+				while ( !done.get() && ( s = next.getAndIncrement() ) < numSpecimens ) {
+					Network specimen = new Network(n, samplers[s]);
+					// specimens are not persisted while training, they would overwrite each other's file
+					if ( trainCycle(specimen,data,learningRate,momentum,errorMargin,null, maxIterations, successRate, printProgress, done) )
+						done.set(true);
+					best.accumulateAndGet(specimen, Utils::fitter);
+				}
+				return null;
+			});
+		}
+		invokeAll(n.pool, tasks);
+		
+		Network survivor = best.get();
+		if ( survivor == null )
+			return n;
+		if ( persistenceFilePath != null )
+			survivor.persistToFile(persistenceFilePath);
+		return survivor;
 		
 	}
 	
+	/**
+	 * @param a can be null
+	 * @param b
+	 * @return network with higher success rate, or lower total error if both are equally successful
+	 */
+	static Network fitter(Network a, Network b) {
+		if ( a == null ) return b;
+		if ( a.successRate != b.successRate )
+			return ( a.successRate > b.successRate ? a : b );
+		return ( a.compareTo(b) <= 0 ? a : b );
+	}
+	
 	/**
 	 * Randomly mutates said network by adding a connection or a neuron
 	 * @param n
@@ -252,54 +532,54 @@ public class Utils {
 		case 0: // add connection
 			switch (r.nextInt(4)) {
 			case 0: // connect input with hidden
-				n.hidden.get(r.nextInt(n.hiddenLayerSize)).connectInput(n.inputValues[r.nextInt(n.inputLayerSize)], null);
+				n.connect(n.inputUnit(r.nextInt(n.inputLayerSize)), n.hiddenUnit(r.nextInt(n.hiddenLayerSize)));
 				break;
 			case 1: // connect two hiddens
 				// get one hidden with layer at least 0
-				HiddenNeuron n1 = findNeuron(n, 0, Neuron.LAYER_OUTPUT);
-				if ( n1 != null ) {
-					HiddenNeuron n2 = findNeuron(n, n1.layer+1, Neuron.LAYER_OUTPUT);
-					if ( n2 != null ) {
-						n1.connectOutputNeuron(n2, null);
+				int n1 = findNeuron(n, 0, Neuron.LAYER_OUTPUT);
+				if ( n1 > -1 ) {
+					int n2 = findNeuron(n, n.hidden.depth[n1]+1, Neuron.LAYER_OUTPUT);
+					if ( n2 > -1 ) {
+						n.connect(n.hiddenUnit(n1), n.hiddenUnit(n2));
 					}
 				}
 				
 				break;
 			case 2: // connect hidden with output
-				n.hidden.get(r.nextInt(n.hiddenLayerSize)).connectOutputNeuron(n.output.get(r.nextInt(n.outputLayerSize)),null);
+				n.connect(n.hiddenUnit(r.nextInt(n.hiddenLayerSize)), n.outputUnit(r.nextInt(n.outputLayerSize)));
 				break;
 			case 3: // connect input to output
-				n.output.get(r.nextInt(n.outputLayerSize)).connectInput(n.inputValues[r.nextInt(n.inputLayerSize)], null);
+				n.connect(n.inputUnit(r.nextInt(n.inputLayerSize)), n.outputUnit(r.nextInt(n.outputLayerSize)));
 				break;
 			}
 			break;
 		case 1: // add neuron
-			HiddenNeuron hn = n.addHiddenNeuron();
+			int hn = n.addHiddenNeuron();
 			// and a random connection to and from said neuron
 			switch (r.nextInt(3)) {
 			case 0: // connect to input and output 
-				hn.connectInput(n.inputValues[r.nextInt(n.inputLayerSize)], null);
-				hn.connectOutputNeuron(n.output.get(r.nextInt(n.outputLayerSize)),null);
+				n.connect(n.inputUnit(r.nextInt(n.inputLayerSize)), n.hiddenUnit(hn));
+				n.connect(n.hiddenUnit(hn), n.outputUnit(r.nextInt(n.outputLayerSize)));
 				break;
 			case 1: // connect to hidden and hidden
 				// get one hidden with layer at least 0
-				HiddenNeuron n1 = findNeuron(n, 0, Neuron.LAYER_OUTPUT);
-				if ( n1 != null ) {
-					HiddenNeuron n2 = findNeuron(n, n1.layer+2, Neuron.LAYER_OUTPUT);
-					if ( n2 != null ) {
-						hn.connectInput(n1, null);
-						hn.connectOutputNeuron(n2, null);
-						hn.layer = n1.layer + 1;
+				int n1 = findNeuron(n, 0, Neuron.LAYER_OUTPUT, hn);
+				if ( n1 > -1 ) {
+					int n2 = findNeuron(n, n.hidden.depth[n1]+2, Neuron.LAYER_OUTPUT, hn);
+					if ( n2 > -1 ) {
+						n.connect(n.hiddenUnit(n1), n.hiddenUnit(hn));
+						n.connect(n.hiddenUnit(hn), n.hiddenUnit(n2));
+						n.hidden.depth[hn] = n.hidden.depth[n1] + 1;
 					}
 				}
 				
 				break;
 			case 2: // connect to hidden and output 
-				HiddenNeuron hn1 = findNeuron(n, 0, Neuron.LAYER_OUTPUT);
-				if ( hn1 != null ) {
-					hn.connectInput(hn1, null);
-					hn.connectOutputNeuron(n.output.get(r.nextInt(n.outputLayerSize)),null);
-					hn.layer = hn1.layer + 1;
+				int hn1 = findNeuron(n, 0, Neuron.LAYER_OUTPUT, hn);
+				if ( hn1 > -1 ) {
+					n.connect(n.hiddenUnit(hn1), n.hiddenUnit(hn));
+					n.connect(n.hiddenUnit(hn), n.outputUnit(r.nextInt(n.outputLayerSize)));
+					n.hidden.depth[hn] = n.hidden.depth[hn1] + 1;
 				}
 				break;
 			}
@@ -312,15 +592,23 @@ public class Utils {
 	 * @param n
 	 * @param minLayer
 	 * @param maxLayer
-	 * @return null if cannot be found
+	 * @return index of hidden neuron, -1 if cannot be found
+	 */
+	public static int findNeuron(Network net, int minLayer, int maxLayer) {
+		return findNeuron(net, minLayer, maxLayer, -1);
+	}
+	
+	/**
+	 * @param exclude neuron not to be returned, so that a neuron just added is not connected to itself
 	 */
-	public static HiddenNeuron findNeuron(Network net, int minLayer, int maxLayer) {
-		ArrayList<HiddenNeuron> candidates = new ArrayList<>();
-		for (HiddenNeuron n : net.hidden ) {
-			if ( n.layer >= minLayer && n.layer < maxLayer ) 
-				candidates.add(n);
+	static int findNeuron(Network net, int minLayer, int maxLayer, int exclude) {
+		ArrayList<Integer> candidates = new ArrayList<>();
+		for (int j=0; j<net.hiddenLayerSize; j++) {
+			int layer = net.hidden.depth[j];
+			if ( layer >= minLayer && layer < maxLayer && j != exclude ) 
+				candidates.add(j);
 		}
-		if ( candidates.size() == 0 ) return null;
+		if ( candidates.size() == 0 ) return -1;
 		return candidates.get(r.nextInt(candidates.size()));
 	}
 }
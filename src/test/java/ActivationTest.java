@@ -0,0 +1,63 @@
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import com.greatnowhere.neural.Activation;
+import com.greatnowhere.neural.Layer;
+import com.greatnowhere.neural.Utils;
+
+/**
+ * Activation function approximations should stay within their documented errors over the whole input range
+ */
+@RunWith(JUnit4.class)
+public class ActivationTest {
+
+	public static final double RANGE = 50D;
+	public static final double STEP = 1E-4D;
+
+	@Test
+	public void table() {
+		assertError(Layer.ACTIVATION_MODE_TABLE, Activation.TABLE_MAX_ERROR);
+	}
+
+	@Test
+	public void rational() {
+		assertError(Layer.ACTIVATION_MODE_RATIONAL, Activation.RATIONAL_MAX_ERROR);
+	}
+
+	@Test
+	public void exact() {
+		assertError(Layer.ACTIVATION_MODE_EXACT, 0D);
+	}
+
+	void assertError(int mode, double maxError) {
+		double tanhError = 0D, sigmoidError = 0D, dTanhError = 0D, dSigmoidError = 0D;
+		double prevTanh = -1D, prevSigmoid = 0D;
+		for (double x=-RANGE; x<=RANGE; x+=STEP) {
+			double tanh = Activation.tanh(x, mode);
+			double sigmoid = Activation.sigmoid(x, mode);
+			if ( tanh < prevTanh || sigmoid < prevSigmoid )
+				Assert.fail("not monotonic at " + x);
+			if ( tanh < -1D || tanh > 1D || sigmoid < 0D || sigmoid > 1D )
+				Assert.fail("out of range at " + x);
+			prevTanh = tanh;
+			prevSigmoid = sigmoid;
+			double exactTanh = Math.tanh(x);
+			double exactSigmoid = 1D / ( 1D + Math.exp(-x) );
+			tanhError = Math.max(tanhError, Math.abs(tanh - exactTanh));
+			sigmoidError = Math.max(sigmoidError, Math.abs(sigmoid - exactSigmoid));
+			dTanhError = Math.max(dTanhError, Math.abs(Utils.d_tanh(tanh) - Utils.d_tanh(exactTanh)));
+			dSigmoidError = Math.max(dSigmoidError, Math.abs(Utils.d_sigmoid(sigmoid) - Utils.d_sigmoid(exactSigmoid)));
+		}
+		// exact sigmoid is clipped at +-45, far below double resolution of 0...1 outputs
+		double epsilon = 1E-15D;
+		Assert.assertTrue("tanh error " + tanhError, tanhError <= maxError + epsilon);
+		Assert.assertTrue("sigmoid error " + sigmoidError, sigmoidError <= maxError / 2D + epsilon);
+		Assert.assertTrue("tanh derivative error " + dTanhError, dTanhError <= 2D * maxError + epsilon);
+		Assert.assertTrue("sigmoid derivative error " + dSigmoidError, dSigmoidError <= maxError / 2D + epsilon);
+		Assert.assertTrue("tanh of NaN", Double.isNaN(Activation.tanh(Double.NaN, mode)));
+		System.out.println("mode " + mode + " tanh error " + tanhError + ", sigmoid error " + sigmoidError);
+	}
+
+}
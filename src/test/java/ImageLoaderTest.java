@@ -0,0 +1,160 @@
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import javax.imageio.ImageIO;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import com.greatnowhere.neural.FeatureCache;
+import com.greatnowhere.neural.ImageLoader;
+import com.greatnowhere.neural.NetworkTrainer;
+import com.greatnowhere.neural.TrainingStore;
+
+@RunWith(JUnit4.class)
+public class ImageLoaderTest {
+
+	public static final int SIZE = 4;
+	public static final int NUM_IMAGES = 40;
+	public static final double EPSILON = 1E-12D;
+
+	@Test
+	public void channels() throws IOException {
+		BufferedImage img = image(0);
+		ImageLoader loader = new ImageLoader(SIZE, SIZE);
+		double[] v = new double[loader.getInputs()];
+		loader.extract(img, v);
+		// column by column, blue green red, as Main always read them
+		int idx = 0;
+		for (int x=0; x<SIZE; x++) {
+			for (int y=0; y<SIZE; y++) {
+				int rgb = img.getRGB(x, y);
+				Assert.assertEquals(( rgb & 0xFF ) / 255D, v[idx++], EPSILON);
+				Assert.assertEquals(( ( rgb >> 8 ) & 0xFF ) / 255D, v[idx++], EPSILON);
+				Assert.assertEquals(( ( rgb >> 16 ) & 0xFF ) / 255D, v[idx++], EPSILON);
+			}
+		}
+		
+		loader.setLayout(ImageLoader.CHANNELS_RGB, ImageLoader.LAYOUT_PLANAR, false);
+		loader.setNormalization(2D / 255D, -1D);
+		loader.extract(img, v);
+		int pixels = SIZE * SIZE;
+		for (int y=0; y<SIZE; y++) {
+			for (int x=0; x<SIZE; x++) {
+				int rgb = img.getRGB(x, y);
+				int p = y * SIZE + x;
+				Assert.assertEquals(( ( rgb >> 16 ) & 0xFF ) * 2D / 255D - 1D, v[p], EPSILON);
+				Assert.assertEquals(( ( rgb >> 8 ) & 0xFF ) * 2D / 255D - 1D, v[pixels + p], EPSILON);
+				Assert.assertEquals(( rgb & 0xFF ) * 2D / 255D - 1D, v[2 * pixels + p], EPSILON);
+			}
+		}
+	}
+
+	@Test
+	public void directory() throws IOException {
+		Path dir = Files.createTempDirectory("images");
+		dir.toFile().deleteOnExit();
+		for (int i=0; i<NUM_IMAGES; i++) {
+			File f = dir.resolve(String.format("img%02d.png", i)).toFile();
+			f.deleteOnExit();
+			ImageIO.write(image(i), "png", f);
+		}
+		File text = dir.resolve("readme.txt").toFile();
+		text.deleteOnExit();
+		Files.write(text.toPath(), "not an image".getBytes());
+		
+		ImageLoader loader = new ImageLoader(SIZE, SIZE);
+		loader.setThreads(3);
+		NetworkTrainer t = new NetworkTrainer();
+		t.init(loader.getInputs(), 1, 2, 0.1D, 0.1D);
+		Assert.assertEquals("Non-image file should be skipped", NUM_IMAGES, loader.addTo(dir, 1D, t));
+		
+		File store = File.createTempFile("images", ".bin");
+		store.deleteOnExit();
+		try ( TrainingStore.Writer w = TrainingStore.create(store.toPath(), loader.getInputs()) ) {
+			loader.addTo(dir, 1D, w);
+		}
+		TrainingStore s = TrainingStore.open(store.toPath());
+		Assert.assertEquals(NUM_IMAGES, s.size());
+		List<double[]> expected = new ArrayList<>();
+		for (int i=0; i<NUM_IMAGES; i++) {
+			double[] v = new double[loader.getInputs()];
+			loader.extract(image(i), v);
+			expected.add(v);
+		}
+		for (int i=0; i<NUM_IMAGES; i++) {
+			Assert.assertEquals("Images out of order", String.format("img%02d.png", i), s.getLabel(i));
+			double[] v = new double[loader.getInputs()];
+			s.read(i, v);
+			// store keeps inputs as floats
+			Assert.assertArrayEquals(expected.get(i), v, 1E-6D);
+		}
+	}
+
+	@Test
+	public void cache() throws IOException {
+		Path dir = Files.createTempDirectory("images");
+		dir.toFile().deleteOnExit();
+		for (int i=0; i<NUM_IMAGES; i++) {
+			File f = dir.resolve(String.format("img%02d.png", i)).toFile();
+			f.deleteOnExit();
+			ImageIO.write(image(i), "png", f);
+		}
+		File cacheFile = File.createTempFile("features", ".cache");
+		cacheFile.deleteOnExit();
+		Files.delete(cacheFile.toPath());
+		
+		FeatureCache cache = FeatureCache.open(cacheFile.toPath(), SIZE, SIZE);
+		List<double[]> first = load(dir, cache);
+		Assert.assertEquals(NUM_IMAGES, cache.getMisses());
+		cache.save();
+		
+		// one image changed, one removed
+		File changed = dir.resolve("img03.png").toFile();
+		ImageIO.write(image(100), "png", changed);
+		changed.setLastModified(changed.lastModified() + 2000L);
+		Files.delete(dir.resolve("img07.png"));
+		
+		cache = FeatureCache.open(cacheFile.toPath(), SIZE, SIZE);
+		Assert.assertEquals(NUM_IMAGES, cache.size());
+		List<double[]> second = load(dir, cache);
+		Assert.assertEquals("Only changed image should be decoded", 1, cache.getMisses());
+		Assert.assertEquals(NUM_IMAGES - 2, cache.getHits());
+		cache.save();
+		Assert.assertEquals("Removed image should be evicted", NUM_IMAGES - 1, FeatureCache.open(cacheFile.toPath(), SIZE, SIZE).size());
+		
+		ImageLoader loader = new ImageLoader(SIZE, SIZE);
+		double[] v = new double[loader.getInputs()];
+		loader.extract(image(100), v);
+		Assert.assertArrayEquals("Changed image should be decoded again", v, second.get(3), 0D);
+		Assert.assertArrayEquals("Cached image differs", first.get(10), second.get(9), 0D);
+		Assert.assertEquals("Cache of other dimensions should be ignored", 0, FeatureCache.open(cacheFile.toPath(), SIZE + 1, SIZE).size());
+	}
+
+	List<double[]> load(Path dir, FeatureCache cache) throws IOException {
+		ImageLoader loader = new ImageLoader(SIZE, SIZE);
+		loader.setCache(cache);
+		List<double[]> inputs = new ArrayList<>();
+		loader.load(Files.list(dir).sorted().collect(Collectors.toList()), (v, label) -> inputs.add(v), false);
+		return inputs;
+	}
+
+	static BufferedImage image(int seed) {
+		BufferedImage img = new BufferedImage(SIZE, SIZE, BufferedImage.TYPE_INT_RGB);
+		for (int x=0; x<SIZE; x++) {
+			for (int y=0; y<SIZE; y++) {
+				img.setRGB(x, y, ( 37 * seed + 101 * x + 59 * y ) * 0x10305 & 0xFFFFFF);
+			}
+		}
+		return img;
+	}
+
+}
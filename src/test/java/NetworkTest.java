@@ -0,0 +1,358 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import com.greatnowhere.neural.CsvListener;
+import com.greatnowhere.neural.EpochStats;
+import com.greatnowhere.neural.Layer;
+import com.greatnowhere.neural.MemoryListener;
+import com.greatnowhere.neural.Network;
+import com.greatnowhere.neural.NetworkFormat;
+import com.greatnowhere.neural.NetworkTrainer;
+import com.greatnowhere.neural.Neuron;
+import com.greatnowhere.neural.Predictor;
+import com.greatnowhere.neural.TrainingStore;
+import com.greatnowhere.neural.Utils;
+
+@RunWith(JUnit4.class)
+public class NetworkTest {
+
+	public static final int NUM_INPUTS = 300;
+	public static final int NUM_HIDDEN = 21;
+	public static final int NUM_OUTPUTS = 3;
+	public static final double EPSILON = 1E-9D;
+	
+	@Test
+	public void batchMatchesSingle() throws InterruptedException {
+		Network n = new Network();
+		n.init(NUM_INPUTS, NUM_OUTPUTS, NUM_HIDDEN);
+		
+		for (int samples : new int[] {1, 7, Network.BATCH_SIZE, 150} ) {
+			double[][] in = randomInputs(samples, NUM_INPUTS);
+			double[][] out = new double[samples][NUM_OUTPUTS];
+			n.computeBatch(in, out);
+			for (int s=0; s<samples; s++) {
+				n.setInputValues(in[s]);
+				n.compute();
+				for (int o=0; o<NUM_OUTPUTS; o++) {
+					Assert.assertEquals("Batch output differs", n.getOutput(o), out[s][o], EPSILON);
+				}
+			}
+		}
+	}
+	
+	@Test
+	public void concurrentPredictions() throws InterruptedException {
+		final Network n = new Network();
+		n.init(NUM_INPUTS, NUM_OUTPUTS, NUM_HIDDEN);
+		final double[][] in = randomInputs(200, NUM_INPUTS);
+		final double[][] expected = new double[in.length][NUM_OUTPUTS];
+		for (int s=0; s<in.length; s++) {
+			n.setInputValues(in[s]);
+			n.compute();
+			for (int o=0; o<NUM_OUTPUTS; o++) {
+				expected[s][o] = n.getOutput(o);
+			}
+		}
+		
+		final Predictor p = n.predictor();
+		final AtomicInteger mismatches = new AtomicInteger();
+		Thread[] threads = new Thread[4];
+		for (int t=0; t<threads.length; t++) {
+			threads[t] = new Thread(() -> {
+				double[] out = new double[NUM_OUTPUTS];
+				for (int round=0; round<20; round++) {
+					for (int s=0; s<in.length; s++) {
+						p.predict(in[s], out);
+						for (int o=0; o<NUM_OUTPUTS; o++) {
+							if ( Math.abs(out[o] - expected[s][o]) > EPSILON ) 
+								mismatches.incrementAndGet();
+						}
+					}
+				}
+			});
+			threads[t].start();
+		}
+		for (Thread t : threads ) {
+			t.join();
+		}
+		Assert.assertEquals("Concurrent predictions differ", 0, mismatches.get());
+	}
+	
+	@Test
+	public void parallelBatchMatchesSerial() throws InterruptedException, IOException {
+		for (int mode : new int[] {Neuron.TRAINING_MODE_BATCH, Neuron.TRAINING_MODE_BATCH_GRADIENT} ) {
+			double[][] in = randomInputs(101, NUM_INPUTS);
+			NetworkTrainer serial = getTrainer(in);
+			serial.n.setTrainingMethod(mode);
+			NetworkTrainer parallel = getTrainer(in);
+			parallel.n = Network.fromString(serial.n.serialize());
+			parallel.setTrainingThreads(5);
+			// batch gradient mode commits weights using the last sample of shuffled set, so only first epoch can be compared
+			int epochs = ( mode == Neuron.TRAINING_MODE_BATCH ? 5 : 1 );
+			for (int epoch=0; epoch<epochs; epoch++) {
+				serial.train(null);
+				parallel.train(null);
+				Assert.assertEquals("Parallel training error differs", serial.n.totalError, parallel.n.totalError, EPSILON);
+			}
+			if ( mode == Neuron.TRAINING_MODE_BATCH_GRADIENT )
+				continue;
+			for (double[] v : in ) {
+				serial.n.setInputValues(v);
+				serial.n.compute();
+				parallel.n.setInputValues(v);
+				parallel.n.compute();
+				Assert.assertEquals("Parallel training output differs", serial.n.getOutput(), parallel.n.getOutput(), EPSILON);
+			}
+		}
+	}
+	
+	@Test
+	public void binaryFormat() throws InterruptedException, IOException {
+		for (int precision : new int[] {Layer.PRECISION_DOUBLE, Layer.PRECISION_FLOAT} ) {
+			Network n = new Network();
+			n.init(NUM_INPUTS, NUM_OUTPUTS, NUM_HIDDEN, precision);
+			n.setActivationMode(Layer.ACTIVATION_MODE_TABLE);
+			for (int i=0; i<20; i++) {
+				Utils.mutateNetwork(n);
+			}
+			File f = File.createTempFile("network", ".bin");
+			f.deleteOnExit();
+			n.persistToFile(f.getPath());
+			Assert.assertTrue("Not a binary file", NetworkFormat.isBinary(f.toPath()));
+			Network loaded = Network.fromPath(f.getPath());
+			Assert.assertEquals("Loaded network precision differs", precision, loaded.getPrecision());
+			Assert.assertEquals("Loaded network activation mode differs", Layer.ACTIVATION_MODE_TABLE, loaded.getActivationMode());
+			assertSameOutputs(n, loaded);
+		}
+	}
+	
+	@Test
+	public void damagedBinaryFile() throws IOException {
+		Network n = new Network();
+		n.init(NUM_INPUTS, NUM_OUTPUTS, NUM_HIDDEN);
+		for (int i=0; i<20; i++) {
+			Utils.mutateNetwork(n);
+		}
+		File f = File.createTempFile("network", ".bin");
+		f.deleteOnExit();
+		n.persistToFile(f.getPath());
+		byte[] bytes = Files.readAllBytes(f.toPath());
+		File damaged = File.createTempFile("damaged", ".bin");
+		damaged.deleteOnExit();
+		for (int length : new int[] {8, 20, 60, 200, bytes.length / 2, bytes.length - 1} ) {
+			Files.write(damaged.toPath(), Arrays.copyOf(bytes, length));
+			assertNotReadable(damaged, "truncated to " + length);
+		}
+		// version 0, negative number of source units of hidden layer
+		for (int offset : new int[] {4, 48} ) {
+			byte[] copy = bytes.clone();
+			ByteBuffer.wrap(copy).order(ByteOrder.LITTLE_ENDIAN).putInt(offset, ( offset == 4 ? 0 : -1 ));
+			Files.write(damaged.toPath(), copy);
+			assertNotReadable(damaged, "damaged at " + offset);
+		}
+	}
+	
+	void assertNotReadable(File f, String message) {
+		try {
+			Network.fromPath(f.getPath());
+			Assert.fail("Network read from file " + message);
+		} catch (IOException e) {
+			// expected
+		}
+	}
+	
+	@Test
+	public void mutatedTopology() throws InterruptedException {
+		Network n = new Network();
+		n.init(5, 2, 4);
+		double[][] in = randomInputs(20, 5);
+		for (int round=0; round<20; round++) {
+			for (int i=0; i<20; i++) {
+				Utils.mutateNetwork(n);
+			}
+			// outputs must not depend on unit values left by the previous sample
+			double[][] out = new double[in.length][2];
+			n.computeBatch(in, out);
+			Predictor p = n.predictor();
+			for (int s=0; s<in.length; s++) {
+				n.setInputValues(in[( s + 1 ) % in.length]);
+				n.compute();
+				n.setInputValues(in[s]);
+				n.compute();
+				double[] expected = new double[] {n.getOutput(0), n.getOutput(1)};
+				n.setInputValues(in[( s + 2 ) % in.length]);
+				n.compute();
+				n.setInputValues(in[s]);
+				n.compute();
+				double[] predicted = new double[2];
+				p.predict(in[s], predicted);
+				for (int o=0; o<2; o++) {
+					Assert.assertEquals("Output depends on previous sample", expected[o], n.getOutput(o), EPSILON);
+					Assert.assertEquals("Batch output differs", expected[o], out[s][o], EPSILON);
+					Assert.assertEquals("Prediction differs", expected[o], predicted[o], EPSILON);
+				}
+			}
+			for (double[] v : in ) {
+				n.setInputValues(v);
+				n.compute();
+				n.learn(new double[] {0D, 1D}, 0.1D, 0.1D);
+			}
+		}
+	}
+	
+	@Test
+	public void convertSerialized() throws InterruptedException, IOException {
+		Network n = new Network();
+		n.init(NUM_INPUTS, NUM_OUTPUTS, NUM_HIDDEN);
+		File serialized = File.createTempFile("network", ".file");
+		serialized.deleteOnExit();
+		File binary = File.createTempFile("network", ".bin");
+		binary.deleteOnExit();
+		Files.write(serialized.toPath(), n.serialize().getBytes(StandardCharsets.UTF_8));
+		assertSameOutputs(n, Network.fromPath(serialized.getPath()));
+		NetworkFormat.main(new String[] {serialized.getPath(), binary.getPath()});
+		assertSameOutputs(n, Network.fromPath(binary.getPath()));
+	}
+	
+	@Test
+	public void trainingStore() throws InterruptedException, IOException {
+		double[][] in = randomInputs(101, NUM_INPUTS);
+		for (double[] v : in ) {
+			// store keeps inputs as floats
+			for (int i=0; i<v.length; i++) {
+				v[i] = (float) v[i];
+			}
+		}
+		File f = File.createTempFile("samples", ".bin");
+		f.deleteOnExit();
+		try ( TrainingStore.Writer w = TrainingStore.create(f.toPath(), NUM_INPUTS) ) {
+			for (int s=0; s<in.length; s++) {
+				w.add(in[s], s % 2, ( s % 3 == 0 ? null : "sample " + s ));
+			}
+		}
+		TrainingStore store = TrainingStore.open(f.toPath());
+		Assert.assertEquals("Stored sample count differs", in.length, store.size());
+		double[] v = new double[NUM_INPUTS];
+		for (int s=0; s<in.length; s++) {
+			Assert.assertEquals("Stored output differs", s % 2, store.read(s, v), 0D);
+			Assert.assertArrayEquals("Stored inputs differ", in[s], v, 0D);
+			Assert.assertEquals("Stored label differs", ( s % 3 == 0 ? null : "sample " + s ), store.getLabel(s));
+		}
+		// version follows magic number, a zeroed or damaged header must not be read
+		byte[] bytes = Files.readAllBytes(f.toPath());
+		File damaged = File.createTempFile("samples", ".bin");
+		damaged.deleteOnExit();
+		for (int version : new int[] {0, -1} ) {
+			ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN).putInt(4, version);
+			Files.write(damaged.toPath(), bytes);
+			try {
+				TrainingStore.open(damaged.toPath());
+				Assert.fail("Dataset file of version " + version + " opened");
+			} catch (IOException e) {
+				// expected
+			}
+		}
+		
+		NetworkTrainer list = getTrainer(in);
+		NetworkTrainer mapped = getTrainer(new double[0][]);
+		mapped.n = Network.fromString(list.n.serialize());
+		mapped.setTrainingStore(store);
+		for (int epoch=0; epoch<3; epoch++) {
+			list.train(null);
+			mapped.train(null);
+			Assert.assertEquals("Stored set training error differs", list.n.totalError, mapped.n.totalError, EPSILON);
+		}
+	}
+	
+	@Test
+	public void trainingListeners() throws InterruptedException, IOException {
+		NetworkTrainer t = getTrainer(randomInputs(50, NUM_INPUTS));
+		t.setTrainingThreads(3);
+		MemoryListener memory = new MemoryListener();
+		File csv = File.createTempFile("epochs", ".csv");
+		csv.deleteOnExit();
+		CsvListener csvListener = new CsvListener(csv.toPath());
+		t.addListener(memory);
+		t.addListener(csvListener);
+		for (int epoch=0; epoch<3; epoch++) {
+			t.train(null);
+		}
+		t.removeListener(csvListener);
+		csvListener.close();
+		t.train(null);
+		
+		List<EpochStats> epochs = memory.getEpochs();
+		Assert.assertEquals("Wrong number of epochs", 4, epochs.size());
+		EpochStats last = epochs.get(3);
+		Assert.assertEquals(4, last.epoch);
+		Assert.assertEquals(50, last.samples);
+		Assert.assertEquals("Every sample should be timed", 50L, last.sampleLatency.getCount());
+		Assert.assertEquals(t.n.successRate, last.successRate, 0D);
+		Assert.assertEquals(t.n.totalError, last.totalError, 0D);
+		Assert.assertTrue("Weight norm missing", last.hiddenWeightNorm > 0D && last.outputWeightNorm > 0D);
+		Assert.assertTrue("Percentiles out of order", last.sampleLatency.getPercentile(50D) <= last.sampleLatency.getPercentile(99D));
+		Assert.assertEquals("Wrong number of CSV lines", 4, Files.readAllLines(csv.toPath()).size());
+	}
+	
+	@Test
+	public void checkpointing() throws InterruptedException, IOException {
+		NetworkTrainer t = getTrainer(randomInputs(20, NUM_INPUTS));
+		File f = File.createTempFile("checkpoint", ".bin");
+		f.deleteOnExit();
+		t.n.setCheckpointInterval(2, 0L);
+		for (int epoch=0; epoch<5; epoch++) {
+			t.train(f.getPath());
+		}
+		t.n.flushCheckpoint();
+		Assert.assertFalse("Temporary file left", new File(f.getPath() + ".tmp").exists());
+		assertSameOutputs(t.n, Network.fromPath(f.getPath()));
+	}
+	
+	void assertSameOutputs(Network expected, Network actual) throws InterruptedException {
+		double[][] in = randomInputs(20, NUM_INPUTS);
+		for (double[] v : in ) {
+			expected.setInputValues(v);
+			expected.compute();
+			actual.setInputValues(v);
+			actual.compute();
+			for (int o=0; o<NUM_OUTPUTS; o++) {
+				Assert.assertEquals("Loaded network output differs", expected.getOutput(o), actual.getOutput(o), 0D);
+			}
+		}
+	}
+	
+	NetworkTrainer getTrainer(double[][] in) {
+		NetworkTrainer t = new NetworkTrainer();
+		t.init(NUM_INPUTS, NUM_OUTPUTS, NUM_HIDDEN, 0.05D, 0.2D);
+		t.n.setTrainingMethod(Neuron.TRAINING_MODE_BATCH);
+		for (int s=0; s<in.length; s++) {
+			t.addTrainingSet(in[s], s % 2, "sample " + s);
+		}
+		return t;
+	}
+	
+	static double[][] randomInputs(int samples, int inputs) {
+		Random r = new Random(1);
+		double[][] in = new double[samples][inputs];
+		for (double[] v : in ) {
+			for (int i=0; i<inputs; i++) {
+				v[i] = r.nextDouble();
+			}
+		}
+		return in;
+	}
+	
+}
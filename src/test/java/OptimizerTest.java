@@ -0,0 +1,89 @@
+import java.io.IOException;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import com.greatnowhere.neural.AdamOptimizer;
+import com.greatnowhere.neural.Layer;
+import com.greatnowhere.neural.MomentumOptimizer;
+import com.greatnowhere.neural.NesterovOptimizer;
+import com.greatnowhere.neural.NetworkTrainer;
+import com.greatnowhere.neural.Neuron;
+import com.greatnowhere.neural.Optimizer;
+import com.greatnowhere.neural.RmspropOptimizer;
+import com.greatnowhere.neural.RpropOptimizer;
+
+/**
+ * Every optimizer should learn XOR in double and float precision, in both stochastic and batch mode
+ */
+@RunWith(JUnit4.class)
+public class OptimizerTest {
+
+	public static final int MAX_EPOCHS = 5000;
+	/**
+	 * networks tried, as some random starting weights never learn XOR
+	 */
+	public static final int ATTEMPTS = 5;
+
+	@Test
+	public void momentum() throws InterruptedException, IOException {
+		assertLearns(new MomentumOptimizer(0.2D), 0.5D);
+	}
+
+	@Test
+	public void nesterov() throws InterruptedException, IOException {
+		assertLearns(new NesterovOptimizer(0.9D), 0.1D);
+	}
+
+	@Test
+	public void rmsprop() throws InterruptedException, IOException {
+		assertLearns(new RmspropOptimizer(), 0.01D);
+	}
+
+	@Test
+	public void adam() throws InterruptedException, IOException {
+		assertLearns(new AdamOptimizer(), 0.02D);
+	}
+
+	@Test
+	public void rprop() throws InterruptedException, IOException {
+		assertLearns(new RpropOptimizer(RpropOptimizer.IRPROP_PLUS), 0D);
+		assertLearns(new RpropOptimizer(RpropOptimizer.IRPROP_MINUS), 0D);
+	}
+
+	void assertLearns(Optimizer o, double learningRate) throws InterruptedException, IOException {
+		for (int method : new int[] {Neuron.TRAINING_MODE_STOCHASTIC, Neuron.TRAINING_MODE_BATCH} ) {
+			for (int precision : new int[] {Layer.PRECISION_DOUBLE, Layer.PRECISION_FLOAT} ) {
+				int epochs = epochs(o, learningRate, method, precision);
+				Assert.assertTrue(o.getClass().getSimpleName() + " method " + method + " precision " + precision + 
+						" not converging", epochs < MAX_EPOCHS);
+			}
+		}
+	}
+
+	/**
+	 * @return epochs the first converging network took, MAX_EPOCHS if none converged
+	 */
+	static int epochs(Optimizer o, double learningRate, int method, int precision) throws InterruptedException, IOException {
+		for (int a=0; a<ATTEMPTS; a++) {
+			NetworkTrainer t = new NetworkTrainer();
+			t.init(2, 1, 3, learningRate, 0D);
+			t.n.setPrecision(precision);
+			t.n.setTrainingMethod(method);
+			t.setOptimizer(o);
+			t.addTrainingSet(new double[] {0D, 0D}, 0D, null);
+			t.addTrainingSet(new double[] {1D, 0D}, 1D, null);
+			t.addTrainingSet(new double[] {0D, 1D}, 1D, null);
+			t.addTrainingSet(new double[] {1D, 1D}, 0D, null);
+			for (int e=0; e<MAX_EPOCHS; e++) {
+				t.train(null);
+				if ( t.n.successRate == 1D )
+					return e;
+			}
+		}
+		return MAX_EPOCHS;
+	}
+
+}
@@ -0,0 +1,96 @@
+import java.io.IOException;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import com.greatnowhere.neural.Layer;
+import com.greatnowhere.neural.Network;
+import com.greatnowhere.neural.NetworkTrainer;
+import com.greatnowhere.neural.Neuron;
+
+/**
+ * Networks keeping weights as floats should learn as well as those keeping doubles
+ */
+@RunWith(JUnit4.class)
+public class PrecisionTest {
+
+	public static final int IMAGE_SIZE = 20;
+	public static final int NUM_IMAGES = 400;
+	public static final int NUM_EPOCHS = 60;
+	public static final int NUM_TRIALS = 3;
+
+	@Test
+	public void stochasticXOR() throws InterruptedException, IOException {
+		for (int precision : new int[] {Layer.PRECISION_DOUBLE, Layer.PRECISION_FLOAT} ) {
+			NetworkTrainer t = getXORTrainer(precision);
+			t.n.setTrainingMethod(Neuron.TRAINING_MODE_STOCHASTIC);
+			Assert.assertTrue("XOR not converging in precision " + precision,
+					t.trainHerd(null, XORTest.NUM_ITERATIONS, 1, XORTest.NUM_SHEEP, false));
+		}
+	}
+
+	@Test
+	public void batchXOR() throws InterruptedException, IOException {
+		for (int precision : new int[] {Layer.PRECISION_DOUBLE, Layer.PRECISION_FLOAT} ) {
+			NetworkTrainer t = getXORTrainer(precision);
+			t.n.setTrainingMethod(Neuron.TRAINING_MODE_BATCH);
+			Assert.assertTrue("XOR not converging in precision " + precision,
+					t.trainHerd(null, XORTest.NUM_ITERATIONS, 1, XORTest.NUM_SHEEP, false));
+		}
+	}
+
+	@Test
+	public void images() throws InterruptedException, IOException {
+		// an occasional run gets stuck, so the best of a few runs is compared
+		double bestDouble = 0D, bestFloat = 0D;
+		for (int trial=0; trial<NUM_TRIALS; trial++) {
+			NetworkTrainer d = getImageTrainer();
+			NetworkTrainer f = getImageTrainer();
+			// both start from the same weights
+			f.n = Network.fromString(d.n.serialize());
+			f.n.setPrecision(Layer.PRECISION_FLOAT);
+			for (int epoch=0; epoch<NUM_EPOCHS; epoch++) {
+				d.train(null);
+				f.train(null);
+			}
+			bestDouble = Math.max(bestDouble, d.n.successRate);
+			bestFloat = Math.max(bestFloat, f.n.successRate);
+		}
+		Assert.assertTrue("Double precision network not learning, success rate " + bestDouble, bestDouble > 0.9D);
+		Assert.assertEquals("Success rates differ", bestDouble, bestFloat, 0.05D);
+	}
+
+	NetworkTrainer getXORTrainer(int precision) {
+		NetworkTrainer t = new NetworkTrainer();
+		t.init(XORTest.NUM_INPUT_NEURONS, XORTest.NUM_OUTPUT_NEURONS, XORTest.NUM_HIDDEN_NEURONS, XORTest.LEARNING_RATE, XORTest.MOMENTUM);
+		t.n.setPrecision(precision);
+		t.addTrainingSet(new double[] {0D, 0D}, 0D, "0 xor 0 = 0");
+		t.addTrainingSet(new double[] {1D, 0D}, 1D, "1 xor 0 = 1");
+		t.addTrainingSet(new double[] {0D, 1D}, 1D, "0 xor 1 = 1");
+		t.addTrainingSet(new double[] {1D, 1D}, 0D, "1 xor 1 = 0");
+		return t;
+	}
+
+	/**
+	 * Random images, positive ones being brighter on the left side
+	 */
+	NetworkTrainer getImageTrainer() {
+		NetworkTrainer t = new NetworkTrainer();
+		t.init(IMAGE_SIZE * IMAGE_SIZE, 1, 10, 0.1D, 0.2D);
+		Random r = new Random(1);
+		for (int s=0; s<NUM_IMAGES; s++) {
+			double[] v = new double[IMAGE_SIZE * IMAGE_SIZE];
+			double left = 0D, right = 0D;
+			for (int i=0; i<v.length; i++) {
+				v[i] = r.nextDouble();
+				if ( i % IMAGE_SIZE < IMAGE_SIZE / 2 ) left += v[i]; else right += v[i];
+			}
+			t.addTrainingSet(v, ( left > right ? 1D : 0D ), null);
+		}
+		return t;
+	}
+
+}
@@ -0,0 +1,94 @@
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import com.greatnowhere.neural.Network;
+import com.greatnowhere.neural.PrioritizedSampler;
+import com.greatnowhere.neural.Sampler;
+import com.greatnowhere.neural.StratifiedSampler;
+import com.greatnowhere.neural.TrainingData;
+import com.greatnowhere.neural.UniformSampler;
+
+/**
+ * Epoch samplers should visit samples in the proportions they promise
+ */
+@RunWith(JUnit4.class)
+public class SamplerTest {
+
+	/**
+	 * 1000 samples, first 50 positive
+	 */
+	static final TrainingData IMBALANCED = new TrainingData() {
+		@Override
+		public int size() {
+			return 1000;
+		}
+
+		@Override
+		public double load(int index, Network n) {
+			return target(index);
+		}
+
+		@Override
+		public double target(int index) {
+			return ( index < 50 ? 1D : 0D );
+		}
+	};
+
+	@Test
+	public void uniform() {
+		Sampler s = new UniformSampler(1L);
+		int[] first = s.next(IMBALANCED).clone();
+		int[] second = s.next(IMBALANCED);
+		Assert.assertFalse(java.util.Arrays.equals(first, second));
+		for (int[] order : new int[][] {first, second} ) {
+			boolean[] seen = new boolean[IMBALANCED.size()];
+			for (int i : order ) {
+				Assert.assertFalse("sample " + i + " visited twice", seen[i]);
+				seen[i] = true;
+			}
+		}
+	}
+
+	@Test
+	public void stratified() {
+		Sampler s = new StratifiedSampler(1L);
+		boolean[] seen = new boolean[IMBALANCED.size()];
+		for (int epoch=0; epoch<2; epoch++) {
+			int positives = 0;
+			for (int i : s.next(IMBALANCED) ) {
+				seen[i] = true;
+				if ( IMBALANCED.target(i) > 0.5D ) positives++;
+			}
+			Assert.assertEquals(500, positives);
+		}
+		// negatives are visited in cycles of 950, so two epochs of 500 cover them all
+		for (int i=0; i<seen.length; i++) {
+			Assert.assertTrue("sample " + i + " not visited", seen[i]);
+		}
+	}
+
+	@Test
+	public void prioritized() {
+		Sampler s = new PrioritizedSampler(1D, 0.1D, 1L);
+		int[] counts = new int[IMBALANCED.size()];
+		for (int epoch=0; epoch<20; epoch++) {
+			for (int i : s.next(IMBALANCED) ) {
+				counts[i]++;
+				// positives are wrong, negatives learned
+				s.trained(i, IMBALANCED.target(i) > 0.5D ? 0.5D : 0.001D);
+			}
+		}
+		int positives = 0;
+		for (int i=0; i<50; i++) {
+			positives += counts[i];
+		}
+		// after first epoch each positive is about 90 times more likely than a negative
+		Assert.assertTrue("positives drawn " + positives, positives > 10000);
+		for (int i=50; i<counts.length; i++) {
+			Assert.assertTrue("negative " + i + " never drawn", counts[i] > 0);
+		}
+	}
+
+}
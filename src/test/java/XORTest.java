@@ -115,6 +115,24 @@ public class XORTest {
 		
 	}
 	
+	@Test
+	public void multiOutputTrain() throws InterruptedException, IOException {
+		
+		// half adder, sum and carry outputs trained in one pass
+		NetworkTrainer t = new NetworkTrainer();
+		t.init(NUM_INPUT_NEURONS, 2, 3, LEARNING_RATE, MOMENTUM);
+		t.addTrainingSet(new double[] {0D, 0D}, new double[] {0D, 0D}, "0 + 0 = 00");
+		t.addTrainingSet(new double[] {1D, 0D}, new double[] {1D, 0D}, "1 + 0 = 01");
+		t.addTrainingSet(new double[] {0D, 1D}, new double[] {1D, 0D}, "0 + 1 = 01");
+		t.addTrainingSet(new double[] {1D, 1D}, new double[] {0D, 1D}, "1 + 1 = 10");
+		t.n.setTrainingAlgorithm(Neuron.TRAINING_ALG_BACKPROP);
+		t.n.setTrainingMethod(Neuron.TRAINING_MODE_STOCHASTIC);
+
+		Assert.assertTrue("Multi-output training not converging", 
+				t.trainHerd(null, NUM_ITERATIONS, 1, NUM_SHEEP, true));
+		
+	}
+	
 	NetworkTrainer getXORTrainer() {
 		NetworkTrainer t = new NetworkTrainer();
 		
@@ -0,0 +1,54 @@
+package com.greatnowhere.neural;
+
+import java.io.IOException;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Optimizers keeping state of all weights, such as Adam's step count, should advance it once per sample
+ * however many threads train the network
+ */
+@RunWith(JUnit4.class)
+public class HogwildTest {
+
+	public static final int SAMPLES = 200;
+	public static final int EPOCHS = 5;
+
+	@Test
+	public void adamSteps() throws InterruptedException, IOException {
+		AdamOptimizer single = train(1), parallel = train(4);
+		Assert.assertEquals("Steps of single thread", EPOCHS * SAMPLES, single.steps.get());
+		Assert.assertEquals("Steps of 4 threads differ from single thread", single.steps.get(), parallel.steps.get());
+		// workers compute bias correction of their own steps, a shared instance would have it overwritten
+		Assert.assertNotSame("Workers share step state", parallel, parallel.view());
+	}
+
+	/**
+	 * @return Adam optimizer of hidden layer after training with threads
+	 */
+	static AdamOptimizer train(int threads) throws InterruptedException, IOException {
+		NetworkTrainer t = new NetworkTrainer();
+		t.init(4, 1, 8, 0.001D, 0D);
+		t.n.setTrainingMethod(Neuron.TRAINING_MODE_STOCHASTIC);
+		t.setOptimizer(new AdamOptimizer());
+		t.setTrainingThreads(threads);
+		Random r = new Random(1);
+		for (int s=0; s<SAMPLES; s++) {
+			double[] in = new double[4];
+			for (int i=0; i<in.length; i++) {
+				in[i] = r.nextDouble();
+			}
+			t.addTrainingSet(in, ( in[0] > in[1] ? 1D : 0D ), null);
+		}
+		for (int e=0; e<EPOCHS; e++) {
+			t.train(null);
+		}
+		Assert.assertTrue("Training not parallel", threads == 1 || t.n.changesPerSample());
+		return (AdamOptimizer) t.n.hidden.optimizer;
+	}
+
+}
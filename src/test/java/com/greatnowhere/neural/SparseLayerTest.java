@@ -0,0 +1,161 @@
+package com.greatnowhere.neural;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Sparse layers should compute, persist and train like dense layers with the same connections.
+ * Kept in the library package, as layers of a network are not visible outside of it
+ */
+@RunWith(JUnit4.class)
+public class SparseLayerTest {
+
+	public static final int NUM_INPUTS = 300;
+	public static final int NUM_HIDDEN = 21;
+	public static final int NUM_OUTPUTS = 3;
+	public static final int EPOCHS = 20;
+	/**
+	 * sparse kernels sum products in a different order than dense vector kernels, so weights differ within rounding
+	 */
+	public static final double EPSILON = 1E-9D;
+
+	@Test
+	public void sparseTopology() throws InterruptedException, IOException {
+		Network n = mutated();
+		File f = File.createTempFile("network", ".bin");
+		f.deleteOnExit();
+		n.persistToFile(f.getPath());
+		Network loaded = Network.fromPath(f.getPath());
+		Assert.assertTrue("Loaded hidden layer not sparse", loaded.hidden instanceof SparseLayer);
+		assertSameOutputs(n, loaded, 0D);
+		// checkpoints are put into a buffer without converting layers, they must match written file
+		ByteBuffer b = ByteBuffer.allocate((int) NetworkFormat.length(n)).order(ByteOrder.LITTLE_ENDIAN);
+		NetworkFormat.put(n, b);
+		Assert.assertFalse("Checkpoint length differs", b.hasRemaining());
+		Assert.assertArrayEquals("Checkpoint differs from written file", Files.readAllBytes(f.toPath()), b.array());
+		// float layers are always dense
+		loaded.setPrecision(Layer.PRECISION_FLOAT);
+		Assert.assertFalse("Float hidden layer sparse", loaded.hidden instanceof SparseLayer);
+		assertSameOutputs(n, loaded, 1E-5D);
+	}
+
+	@Test
+	public void sparseTrainingMatchesDense() throws InterruptedException, IOException {
+		File f = File.createTempFile("network", ".bin");
+		f.deleteOnExit();
+		seeded().persistToFile(f.getPath());
+		assertTrainsLikeDense(f, null, 0.05D);
+		// steps of Adam do not shrink with gradients, so at larger rates rounding differences keep growing
+		assertTrainsLikeDense(f, new AdamOptimizer(), 0.001D);
+		assertTrainsLikeDense(f, new RpropOptimizer(RpropOptimizer.IRPROP_PLUS), 0D);
+	}
+
+	/**
+	 * Trains network of file f as loaded, with sparse hidden layer, and with its layers made dense,
+	 * in stochastic and batch mode
+	 */
+	static void assertTrainsLikeDense(File f, Optimizer o, double learningRate) throws IOException {
+		for (int method : new int[] {Neuron.TRAINING_MODE_STOCHASTIC, Neuron.TRAINING_MODE_BATCH} ) {
+			Network sparse = Network.fromPath(f.getPath());
+			Network dense = Network.fromPath(f.getPath());
+			dense.hidden = dense.hidden.dense();
+			dense.output = dense.output.dense();
+			String mode = ( o != null ? o.getClass().getSimpleName() : "backpropagation" ) + " method " + method;
+			Assert.assertTrue(mode + " hidden layer not sparse", sparse.hidden instanceof SparseLayer);
+			Assert.assertFalse(mode + " hidden layer not dense", dense.hidden instanceof SparseLayer);
+			train(sparse, o, method, learningRate);
+			train(dense, o, method, learningRate);
+			// weights of missing connections are 0 in both
+			Assert.assertArrayEquals(mode + " hidden weights differ", dense.hidden.weights, sparse.hidden.dense().weights, EPSILON);
+			Assert.assertArrayEquals(mode + " output weights differ", dense.output.weights, sparse.output.dense().weights, EPSILON);
+		}
+	}
+
+	/**
+	 * @return network whose layers are left mostly disconnected by mutation
+	 */
+	static Network mutated() {
+		Network n = new Network();
+		n.init(NUM_INPUTS, NUM_OUTPUTS, NUM_HIDDEN);
+		for (int i=0; i<300; i++) {
+			Utils.mutateNetwork(n);
+		}
+		return n;
+	}
+
+	/**
+	 * @return sparse network of fixed topology and weights, so that differences within rounding
+	 * do not depend on the network mutation happens to produce
+	 */
+	static Network seeded() {
+		Random r = new Random(1);
+		Network n = new Network();
+		n.init(NUM_INPUTS, NUM_OUTPUTS, NUM_HIDDEN);
+		for (int i=0; i<100; i++) {
+			int j = n.addHiddenNeuron();
+			for (int c=0; c<3; c++) {
+				n.connect(n.inputUnit(r.nextInt(NUM_INPUTS)), n.hiddenUnit(j));
+			}
+			// neurons added before, so hidden layer reads itself without cycles
+			n.connect(n.hiddenUnit(r.nextInt(j)), n.hiddenUnit(j));
+			n.connect(n.hiddenUnit(j), n.outputUnit(r.nextInt(NUM_OUTPUTS)));
+		}
+		for (Layer l : new Layer[] {n.hidden, n.output} ) {
+			for (int w=0; w<l.weights.length; w++) {
+				l.weights[w] = ( l.mask == null || l.mask[w] ? 2D * r.nextDouble() - 1D : 0D );
+			}
+		}
+		return n;
+	}
+
+	static void train(Network n, Optimizer o, int method, double learningRate) {
+		n.setTrainingMethod(method);
+		n.setOptimizer(o);
+		double[][] in = randomInputs(30, NUM_INPUTS);
+		double[] targets = new double[NUM_OUTPUTS];
+		for (int e=0; e<EPOCHS; e++) {
+			for (int s=0; s<in.length; s++) {
+				n.setInputValues(in[s]);
+				n.forward();
+				for (int t=0; t<NUM_OUTPUTS; t++) {
+					targets[t] = ( ( s + t ) % 2 == 0 ? 0.9D : 0.1D );
+				}
+				n.learn(targets, learningRate, 0.5D);
+			}
+			n.commitChanges(learningRate, 0.5D);
+		}
+	}
+
+	static void assertSameOutputs(Network expected, Network actual, double delta) throws InterruptedException {
+		for (double[] v : randomInputs(20, NUM_INPUTS) ) {
+			expected.setInputValues(v);
+			expected.compute();
+			actual.setInputValues(v);
+			actual.compute();
+			for (int o=0; o<NUM_OUTPUTS; o++) {
+				Assert.assertEquals("Output differs", expected.getOutput(o), actual.getOutput(o), delta);
+			}
+		}
+	}
+
+	static double[][] randomInputs(int samples, int inputs) {
+		Random r = new Random(1);
+		double[][] in = new double[samples][inputs];
+		for (double[] v : in ) {
+			for (int i=0; i<inputs; i++) {
+				v[i] = r.nextDouble();
+			}
+		}
+		return in;
+	}
+
+}